@@ -0,0 +1,437 @@
+package allpackage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//分块格式：输入按固定大小切成互相独立的数据块，每块使用自己的码长表，可以在多个核上并行编码
+public class BlockCodec {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int MIN_BLOCK_SIZE = 1 << 12;
+    public static final int MAX_BLOCK_SIZE = 1 << 26;
+
+    // 数据块类型
+    public static final int BLOCK_HUFFMAN = 0;
+    // 原样保存的数据块，哈夫曼编码加上码长表不比原始数据小时使用
+    public static final int BLOCK_STORED = 1;
+    // 使用训练好的字典编码的数据块，没有码长表
+    public static final int BLOCK_DICTIONARY = 2;
+    // 按前一个字节选择码表的一阶上下文数据块，格式见 ContextCodec
+    public static final int BLOCK_CONTEXT = 3;
+    // 先用 LZ77 拆成字面字节和匹配，再分路做哈夫曼编码的数据块，格式见 Lz77Codec
+    public static final int BLOCK_LZ77 = 4;
+    // 分成几路交错位流的零阶数据块，格式见 InterleavedCodec
+    public static final int BLOCK_INTERLEAVED = 5;
+    // 用没有出现过的字节值表示常见字节对的数据块，格式见 PairCodec
+    public static final int BLOCK_PAIRS = 6;
+    // 长度未知的数据流以原始长度为 0 的数据块头结束
+    public static final int END_OF_BLOCKS = 0;
+
+    // 码长表在最坏情况下占用的字节数，加上类型字节和长度字段
+    private static final int MAX_BLOCK_OVERHEAD = 2 * 256 + 16;
+
+    /*
+     * 数据块布局：
+     *   int  原始长度
+     *   int  压缩长度（之后所有字节的数量）
+     *   byte 数据块类型
+     *   码长表
+     *   哈夫曼编码数据
+     * 原样保存的数据块在类型字节之后直接是原始字节；字典数据块没有码长表，直接是按字典编码的数据；
+     * 上下文数据块在类型字节之后是上下文映射和各类的码长表，见 ContextCodec；LZ77 数据块见 Lz77Codec，交错数据块见 InterleavedCodec，字节对数据块见 PairCodec。
+     */
+
+    public static void checkBlockSize(int blockSize) {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("数据块大小必须在 " + MIN_BLOCK_SIZE + " 到 " + MAX_BLOCK_SIZE + " 字节之间");
+        }
+    }
+
+
+    //按 options 编码缓冲区中剩余的字节（可以是内存映射的文件），编码后缓冲区的位置移到末尾。
+    //先按零阶（或交错）格式编码，再依次尝试上下文模式、字节对字母表和 LZ77，取其中最小的数据块；使用字典时不比自带码长表大的零阶数据块只记录为字典数据块
+    public static byte[] encodeBlock(ByteBuffer data, CompressionOptions options) throws IOException {
+        int maxCodeLength = options.maxCodeLength();
+        int start = data.position();
+        byte[] block = encodeOrder0Block(data, maxCodeLength, options.dictionary(), options.interleaved());
+        if (options.contextModel()) {
+            data.position(start);
+            byte[] contextBlock = ContextCodec.encodeBlock(data, maxCodeLength, block.length);
+            data.position(data.limit());
+            if (contextBlock != null) {
+                block = contextBlock;
+            }
+        }
+        if (options.pairs()) {
+            data.position(start);
+            byte[] pairBlock = PairCodec.encodeBlock(data, maxCodeLength, block.length);
+            data.position(data.limit());
+            if (pairBlock != null) {
+                block = pairBlock;
+            }
+        }
+        if (options.lz() != null) {
+            data.position(start);
+            byte[] lzBlock = options.lz().encodeBlock(data, maxCodeLength, block.length);
+            data.position(data.limit());
+            if (lzBlock != null) {
+                block = lzBlock;
+            }
+        }
+        return block;
+    }
+
+    private static byte[] encodeOrder0Block(ByteBuffer data, int maxCodeLength, HuffmanDictionary dictionary, boolean interleaved) throws IOException {
+        int length = data.remaining();
+        long[] frequencies = new long[256];
+        HuffmanCompression.countByteFrequencies(data, frequencies);
+        if (dictionary != null) {
+            // 字典模式下自带的码长表多数时候只用来比较大小，由频率直接生成，不建哈夫曼树
+            byte[] codeLengths = new byte[256];
+            CanonicalHuffman.codeLengths(frequencies, maxCodeLength, codeLengths, new CanonicalHuffman.Workspace());
+            long payloadBytes = (HuffmanEncoder.encodedBits(frequencies, codeLengths) + 7) >>> 3;
+            long dictionaryBytes = (dictionary.encodedBits(frequencies) + 7) >>> 3;
+            if (prefersDictionary(length, dictionaryBytes, payloadBytes, codeLengths)) {
+                return encodeBlock(data, BLOCK_DICTIONARY, null, dictionary.encoder(), dictionaryBytes);
+            }
+            if (isIncompressible(length, payloadBytes, codeLengths)) {
+                return storeBlock(data);
+            }
+            return encodeBlock(data, BLOCK_HUFFMAN, codeLengths, new HuffmanEncoder(codeLengths), payloadBytes);
+        }
+        if (interleaved) {
+            // 交错数据块的码长不超过 InterleavedCodec.TABLE_BITS，直接由频率求出，不建哈夫曼树
+            byte[] block = InterleavedCodec.encodeBlock(data, frequencies, maxCodeLength);
+            return block != null ? block : storeBlock(data);
+        }
+
+        byte[] codeLengths = CanonicalHuffman.codeLengths(HuffmanCompression.buildHuffmanTree(frequencies), maxCodeLength);
+        long payloadBytes = (HuffmanEncoder.encodedBits(frequencies, codeLengths) + 7) >>> 3;
+
+        // 编码后的大小由频率预先算出，不能缩小数据时跳过编码，直接保存原始字节
+        if (isIncompressible(length, payloadBytes, codeLengths)) {
+            return storeBlock(data);
+        }
+        return encodeBlock(data, BLOCK_HUFFMAN, codeLengths, new HuffmanEncoder(codeLengths), payloadBytes);
+    }
+
+    //写出块头、码长表（codeLengths 为 null 时没有）和编码数据
+    private static byte[] encodeBlock(ByteBuffer data, int blockType, byte[] codeLengths, HuffmanEncoder encoder, long payloadBytes) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream((int) payloadBytes + MAX_BLOCK_OVERHEAD);
+        DataOutputStream dataOutputStream = new DataOutputStream(block);
+        dataOutputStream.writeInt(data.remaining());
+        dataOutputStream.writeInt(0); // 压缩长度稍后回填
+        dataOutputStream.writeByte(blockType);
+        if (codeLengths != null) {
+            CanonicalHuffman.writeCodeLengths(codeLengths, dataOutputStream);
+        }
+
+        encoder.start(block);
+        encoder.write(data);
+        encoder.finish();
+
+        byte[] bytes = block.toByteArray();
+        int compressedLength = bytes.length - 8;
+        bytes[4] = (byte) (compressedLength >>> 24);
+        bytes[5] = (byte) (compressedLength >>> 16);
+        bytes[6] = (byte) (compressedLength >>> 8);
+        bytes[7] = (byte) compressedLength;
+        return bytes;
+    }
+
+    //哈夫曼编码数据加上码长表不比原始数据小
+    public static boolean isIncompressible(long originalLength, long payloadBytes, byte[] codeLengths) {
+        return payloadBytes + CanonicalHuffman.codeLengthsSize(codeLengths) >= originalLength;
+    }
+
+    //按字典编码比原样保存小，并且不比自带码长表的编码大
+    public static boolean prefersDictionary(long originalLength, long dictionaryBytes, long payloadBytes, byte[] codeLengths) {
+        return dictionaryBytes < originalLength && dictionaryBytes <= payloadBytes + CanonicalHuffman.codeLengthsSize(codeLengths);
+    }
+
+    //把缓冲区中剩余的字节原样保存为一个数据块，之后缓冲区的位置移到末尾
+    private static byte[] storeBlock(ByteBuffer data) {
+        int length = data.remaining();
+        ByteBuffer block = ByteBuffer.allocate(length + 9);
+        block.putInt(length);
+        block.putInt(length + 1);
+        block.put((byte) BLOCK_STORED);
+        block.put(data);
+        return block.array();
+    }
+
+
+    //把输入流按 options 的数据块大小切块后交给线程池并行编码，再按原来的顺序写出，返回读取的原始字节数
+    public static long compressBlocks(InputStream inputStream, DataOutputStream dataOutputStream, ForkJoinPool pool, CompressionOptions options) throws IOException {
+        int blockSize = options.blockSize();
+        // 限制同时在内存中的数据块数量
+        int maxInFlight = pool.getParallelism() * 2;
+        ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+        long totalLength = 0;
+
+        while (true) {
+            byte[] data = new byte[blockSize];
+            int length = inputStream.readNBytes(data, 0, blockSize);
+            if (length == 0) {
+                break;
+            }
+            totalLength += length;
+
+            pending.add(pool.submit(() -> {
+                try {
+                    return encodeBlock(ByteBuffer.wrap(data, 0, length), options);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+
+            if (pending.size() >= maxInFlight) {
+                dataOutputStream.write(join(pending.poll()));
+            }
+            if (length < blockSize) {
+                break;
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            dataOutputStream.write(join(pending.poll()));
+        }
+        return totalLength;
+    }
+
+    //把已经映射到内存的输入按 blockSize 切块，全部写成原样保存的数据块，返回原始字节数；用于抽样估计已经判定不值得编码的文件
+    public static long storeBlocks(List<ByteBuffer> windows, DataOutputStream dataOutputStream, int blockSize) throws IOException {
+        long totalLength = 0;
+        for (ByteBuffer window : windows) {
+            for (int offset = 0; offset < window.limit(); offset += blockSize) {
+                ByteBuffer data = window.duplicate();
+                data.position(offset).limit(Math.min(offset + blockSize, window.limit()));
+                totalLength += data.remaining();
+                dataOutputStream.write(storeBlock(data));
+            }
+        }
+        return totalLength;
+    }
+
+    //对已经映射到内存的输入按 options 的数据块大小切块并行编码，每个窗口的大小必须是数据块大小的整数倍，返回原始字节数
+    public static long compressBlocks(List<ByteBuffer> windows, DataOutputStream dataOutputStream, ForkJoinPool pool, CompressionOptions options) throws IOException {
+        int blockSize = options.blockSize();
+        int maxInFlight = pool.getParallelism() * 2;
+        ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+        long totalLength = 0;
+
+        for (ByteBuffer window : windows) {
+            for (int offset = 0; offset < window.limit(); offset += blockSize) {
+                // 每个数据块是窗口的一个切片，编码任务直接读取映射的内存
+                ByteBuffer data = window.duplicate();
+                data.position(offset).limit(Math.min(offset + blockSize, window.limit()));
+                totalLength += data.remaining();
+
+                pending.add(pool.submit(() -> {
+                    try {
+                        return encodeBlock(data, options);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+
+                if (pending.size() >= maxInFlight) {
+                    dataOutputStream.write(join(pending.poll()));
+                }
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            dataOutputStream.write(join(pending.poll()));
+        }
+        return totalLength;
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    //依次解码数据块，直到输出 originalLength 个字节
+    public static void decompressBlocks(DataInputStream dataInputStream, OutputStream outputStream, long originalLength, int maxCodeLength) throws IOException {
+        long remaining = originalLength;
+        while (remaining > 0) {
+            remaining -= decodeBlock(dataInputStream, outputStream, maxCodeLength);
+        }
+    }
+
+    /*
+     * 并行解码：先从 dataPosition 开始依次读取块头、跳过数据，得到每个块在压缩文件中的位置
+     * 和在输出文件中的偏移；每个块交给线程池独立解码后，按偏移直接写入输出文件。
+     */
+    public static void decompressBlocksParallel(FileChannel inputChannel, long dataPosition, long originalLength, FileChannel outputChannel, int maxCodeLength, int threadCount) throws IOException {
+        decompressBlocksParallel(inputChannel, dataPosition, originalLength, outputChannel, maxCodeLength, threadCount, null);
+    }
+
+    public static void decompressBlocksParallel(FileChannel inputChannel, long dataPosition, long originalLength, FileChannel outputChannel, int maxCodeLength, int threadCount,
+                                                HuffmanDictionary dictionary) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+            ByteBuffer blockHeader = ByteBuffer.allocate(8);
+            long position = dataPosition;
+            long outputOffset = 0;
+
+            while (outputOffset < originalLength) {
+                blockHeader.clear();
+                readFully(inputChannel, blockHeader, position);
+                int blockOriginalLength = blockHeader.getInt(0);
+                int compressedLength = blockHeader.getInt(4);
+                if (blockOriginalLength <= 0 || blockOriginalLength > MAX_BLOCK_SIZE || compressedLength <= 0 || compressedLength > MAX_BLOCK_SIZE + MAX_BLOCK_OVERHEAD) {
+                    throw new IOException("数据块已损坏");
+                }
+
+                long blockPosition = position + 8;
+                long blockOutputOffset = outputOffset;
+                tasks.add(pool.submit(() -> {
+                    try {
+                        // 数据块直接从映射的内存解码；原样保存的数据块直接从映射的内存写入输出文件
+                        ByteBuffer block = inputChannel.map(FileChannel.MapMode.READ_ONLY, blockPosition, compressedLength);
+
+                        ByteBuffer output;
+                        if (block.get(0) == BLOCK_STORED) {
+                            output = block.position(1).slice();
+                            if (output.remaining() != blockOriginalLength) {
+                                throw new IOException("数据块已损坏");
+                            }
+                        } else {
+                            ByteArrayOutputStream decoded = new ByteArrayOutputStream(blockOriginalLength);
+                            decodeBlock(block, blockOriginalLength, decoded, maxCodeLength, dictionary);
+                            output = ByteBuffer.wrap(decoded.toByteArray());
+                        }
+                        long writePosition = blockOutputOffset;
+                        while (output.hasRemaining()) {
+                            writePosition += outputChannel.write(output, writePosition);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                }));
+
+                position = blockPosition + compressedLength;
+                outputOffset += blockOriginalLength;
+            }
+
+            for (ForkJoinTask<Void> task : tasks) {
+                join(task);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead < 0) {
+                throw new EOFException("压缩文件不完整");
+            }
+            position += bytesRead;
+        }
+    }
+
+    //从输入流读取一个数据块并解码，返回这个块的原始长度
+    public static int decodeBlock(DataInputStream dataInputStream, OutputStream outputStream, int maxCodeLength) throws IOException {
+        int originalLength = dataInputStream.readInt();
+        decodeBlock(dataInputStream, originalLength, outputStream, maxCodeLength);
+        return originalLength;
+    }
+
+    //读取原始长度之后的数据块并解码
+    public static void decodeBlock(DataInputStream dataInputStream, int originalLength, OutputStream outputStream, int maxCodeLength) throws IOException {
+        int compressedLength = dataInputStream.readInt();
+        if (originalLength <= 0 || originalLength > MAX_BLOCK_SIZE || compressedLength <= 0 || compressedLength > MAX_BLOCK_SIZE + MAX_BLOCK_OVERHEAD) {
+            throw new IOException("数据块已损坏");
+        }
+
+        byte[] block = new byte[compressedLength];
+        dataInputStream.readFully(block);
+        decodeBlock(block, originalLength, outputStream, maxCodeLength);
+    }
+
+    //解码数据块中压缩长度之后的部分
+    public static void decodeBlock(byte[] block, int originalLength, OutputStream outputStream, int maxCodeLength) throws IOException {
+        decodeBlock(ByteBuffer.wrap(block), originalLength, outputStream, maxCodeLength);
+    }
+
+    //解码缓冲区中剩余的部分（压缩长度之后的数据块内容），可以是内存映射的文件
+    public static void decodeBlock(ByteBuffer block, int originalLength, OutputStream outputStream, int maxCodeLength) throws IOException {
+        decodeBlock(block, originalLength, outputStream, maxCodeLength, null);
+    }
+
+    //dictionary 为压缩文件头中记录的字典，没有使用字典时为 null
+    public static void decodeBlock(ByteBuffer block, int originalLength, OutputStream outputStream, int maxCodeLength, HuffmanDictionary dictionary) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(new ByteBufferInputStream(block));
+
+        int blockType = dataInputStream.readUnsignedByte();
+        if (blockType == BLOCK_STORED) {
+            copyStoredBlock(block, originalLength, outputStream);
+            return;
+        }
+        if (blockType == BLOCK_CONTEXT) {
+            ContextCodec.decodeBlock(block, originalLength, outputStream);
+            return;
+        }
+        if (blockType == BLOCK_PAIRS) {
+            PairCodec.decodeBlock(block, originalLength, outputStream);
+            return;
+        }
+        if (blockType == BLOCK_INTERLEAVED) {
+            InterleavedCodec.decodeBlock(block, originalLength, outputStream);
+            return;
+        }
+        if (blockType == BLOCK_LZ77) {
+            Lz77Codec.decodeBlock(block, originalLength, outputStream, maxCodeLength);
+            return;
+        }
+        HuffmanTableDecoder decoder;
+        if (blockType == BLOCK_DICTIONARY) {
+            if (dictionary == null) {
+                throw new IOException("数据块使用了字典，但压缩文件没有记录字典");
+            }
+            decoder = dictionary.decoder();
+        } else if (blockType == BLOCK_HUFFMAN) {
+            decoder = new HuffmanTableDecoder(CanonicalHuffman.readCodeLengths(dataInputStream), maxCodeLength);
+        } else {
+            throw new IOException("未知的数据块类型: " + blockType);
+        }
+
+        long decoded = decoder.decode(block, outputStream, block.remaining() * 8L, originalLength);
+        if (decoded != originalLength) {
+            throw new IOException("数据块已损坏");
+        }
+    }
+
+    //原样保存的数据块直接复制到输出流
+    private static void copyStoredBlock(ByteBuffer block, int originalLength, OutputStream outputStream) throws IOException {
+        if (block.remaining() != originalLength) {
+            throw new IOException("数据块已损坏");
+        }
+        if (block.hasArray()) {
+            outputStream.write(block.array(), block.arrayOffset() + block.position(), originalLength);
+            block.position(block.limit());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(originalLength, 1 << 16)];
+        while (block.hasRemaining()) {
+            int length = Math.min(chunk.length, block.remaining());
+            block.get(chunk, 0, length);
+            outputStream.write(chunk, 0, length);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package allpackage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//字节频率统计：四组交错的计数器轮流累加，避免连续相同字节对同一个计数器反复读写造成的存储转发停顿
+public class ByteHistogram {
+    // 每组 int 计数器最多累加这么多字节后并入 long 结果，保证不会溢出
+    private static final int FLUSH_INTERVAL = 1 << 28;
+    // 小于这个大小的数据不值得拆分给多个线程
+    public static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    //统计字节数组中一段数据的字节频率
+    public static long[] count(byte[] data, int offset, int length) {
+        long[] frequencies = new long[256];
+        count(ByteBuffer.wrap(data, offset, length), frequencies);
+        return frequencies;
+    }
+
+    //把缓冲区中 position 到 limit 之间字节的频率累加到 frequencies，不改变缓冲区的位置
+    public static void count(ByteBuffer data, long[] frequencies) {
+        count(data, frequencies, new int[4][256]);
+    }
+
+    //同上，counters 为四组清零的计数器，调用方可以重复使用；返回时计数器仍为 0
+    public static void count(ByteBuffer data, long[] frequencies, int[][] counters) {
+        int[] counts0 = counters[0];
+        int[] counts1 = counters[1];
+        int[] counts2 = counters[2];
+        int[] counts3 = counters[3];
+        int end = data.limit();
+        for (int start = data.position(); start < end; start += FLUSH_INTERVAL) {
+            int chunkEnd = (int) Math.min(end, (long) start + FLUSH_INTERVAL);
+            if (data.hasArray()) {
+                countArray(data.array(), data.arrayOffset() + start, data.arrayOffset() + chunkEnd, counts0, counts1, counts2, counts3);
+            } else {
+                countBuffer(data, start, chunkEnd, counts0, counts1, counts2, counts3);
+            }
+            for (int i = 0; i < 256; i++) {
+                frequencies[i] += (long) counts0[i] + counts1[i] + counts2[i] + counts3[i];
+            }
+            Arrays.fill(counts0, 0);
+            Arrays.fill(counts1, 0);
+            Arrays.fill(counts2, 0);
+            Arrays.fill(counts3, 0);
+        }
+    }
+
+    private static void countArray(byte[] data, int start, int end, int[] counts0, int[] counts1, int[] counts2, int[] counts3) {
+        int i = start;
+        for (; i + 4 <= end; i += 4) {
+            counts0[data[i] & 0xFF]++;
+            counts1[data[i + 1] & 0xFF]++;
+            counts2[data[i + 2] & 0xFF]++;
+            counts3[data[i + 3] & 0xFF]++;
+        }
+        for (; i < end; i++) {
+            counts0[data[i] & 0xFF]++;
+        }
+    }
+
+    //直接缓冲区（例如内存映射的文件）每次读取 8 个字节，再拆开分给四组计数器；按大端顺序的副本读取，与调用方缓冲区的字节序无关
+    private static void countBuffer(ByteBuffer buffer, int start, int end, int[] counts0, int[] counts1, int[] counts2, int[] counts3) {
+        ByteBuffer data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int i = start;
+        for (; i + 8 <= end; i += 8) {
+            long word = data.getLong(i);
+            counts0[(int) (word >>> 56)]++;
+            counts1[(int) (word >>> 48) & 0xFF]++;
+            counts2[(int) (word >>> 40) & 0xFF]++;
+            counts3[(int) (word >>> 32) & 0xFF]++;
+            counts0[(int) (word >>> 24) & 0xFF]++;
+            counts1[(int) (word >>> 16) & 0xFF]++;
+            counts2[(int) (word >>> 8) & 0xFF]++;
+            counts3[(int) word & 0xFF]++;
+        }
+        for (; i < end; i++) {
+            counts0[data.get(i) & 0xFF]++;
+        }
+    }
+
+
+    //把较大的输入切成若干段交给线程池分别统计，最后合并各段的结果
+    public static void count(ByteBuffer data, long[] frequencies, ForkJoinPool pool) {
+        int length = data.remaining();
+        int parallelism = pool.getParallelism();
+        if (parallelism <= 1 || length < 2 * PARALLEL_THRESHOLD) {
+            count(data, frequencies);
+            return;
+        }
+
+        int segmentCount = Math.min(parallelism * 2, length / PARALLEL_THRESHOLD);
+        int segmentSize = (length + segmentCount - 1) / segmentCount;
+        List<ForkJoinTask<long[]>> tasks = new ArrayList<>(segmentCount);
+        for (int offset = 0; offset < length; offset += segmentSize) {
+            ByteBuffer segment = data.duplicate();
+            segment.position(data.position() + offset).limit(data.position() + Math.min(length, offset + segmentSize));
+            tasks.add(pool.submit(() -> {
+                long[] segmentFrequencies = new long[256];
+                count(segment, segmentFrequencies);
+                return segmentFrequencies;
+            }));
+        }
+
+        for (ForkJoinTask<long[]> task : tasks) {
+            long[] segmentFrequencies = task.join();
+            for (int i = 0; i < 256; i++) {
+                frequencies[i] += segmentFrequencies[i];
+            }
+        }
+    }
+}
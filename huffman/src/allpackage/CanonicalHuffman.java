@@ -0,0 +1,384 @@
+package allpackage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import allpackage.HuffmanCompression.Node;
+
+//范式哈夫曼编码：压缩文件中只保存每个字节的码长，编码在解压时由码长重新推导
+public class CanonicalHuffman {
+    // 码长上限，保证编码可以放进 HuffmanEncoder 的 int 编码表
+    public static final int MAX_CODE_LENGTH = 32;
+    // 可选的最小码长限制，256 种字节至少需要 8 位
+    public static final int MIN_CODE_LENGTH_LIMIT = 8;
+
+    // 码长表的游程编码：0x00-0x3F 为单个码长，0x80-0xFF 表示把上一个码长再重复 1-128 次
+    private static final int REPEAT_FLAG = 0x80;
+    private static final int MAX_REPEAT = 128;
+    // 码长表最多占用的字节数：每个记号至少对应一个字节值
+    public static final int MAX_CODE_LENGTHS_SIZE = 256;
+
+    //求码长用到的工作数组，可以重复使用以避免每次分配；包归并的数组只在码长超出限制时才分配
+    public static class Workspace {
+        final int[] symbols = new int[256];
+        final long[] leafWeights = new long[256];
+        final long[] depths = new long[256];
+        long[][] weights;
+        int[][] items;
+        final int[] levelSizes = new int[MAX_CODE_LENGTH];
+    }
+
+    //由哈夫曼树得到每个字节的码长（未出现的字节码长为 0）
+    public static byte[] codeLengths(Node root) {
+        return codeLengths(root, MAX_CODE_LENGTH);
+    }
+
+    //由哈夫曼树得到码长不超过 maxCodeLength 的最优码长
+    public static byte[] codeLengths(Node root, int maxCodeLength) {
+        checkCodeLengthLimit(maxCodeLength);
+        byte[] lengths = new byte[256];
+        if (root == null) {
+            return lengths;
+        }
+
+        // 只有一种字节时，也给它分配 1 位的编码
+        if (HuffmanCompression.isLeaf(root)) {
+            lengths[root.data & 0xFF] = 1;
+            return lengths;
+        }
+
+        if (collectLengths(root, 0, lengths) > maxCodeLength) {
+            // 哈夫曼树超过了码长限制，改用包归并算法重新求码长
+            long[] frequencies = new long[256];
+            collectFrequencies(root, frequencies);
+            Arrays.fill(lengths, (byte) 0);
+            Workspace workspace = new Workspace();
+            packageMerge(sortLeaves(frequencies, workspace), maxCodeLength, lengths, workspace);
+        }
+        return lengths;
+    }
+
+    //直接由字节频率求码长不超过 maxCodeLength 的最优码长，结果写入 lengths；使用给定的工作数组，不分配内存
+    public static void codeLengths(long[] frequencies, int maxCodeLength, byte[] lengths, Workspace workspace) {
+        checkCodeLengthLimit(maxCodeLength);
+        Arrays.fill(lengths, (byte) 0);
+
+        int symbolCount = sortLeaves(frequencies, workspace);
+        if (symbolCount == 1) {
+            // 只有一种字节时，也给它分配 1 位的编码
+            lengths[workspace.symbols[0]] = 1;
+        } else if (symbolCount > 1 && !minimumRedundancy(symbolCount, maxCodeLength, lengths, workspace)) {
+            packageMerge(symbolCount, maxCodeLength, lengths, workspace);
+        }
+    }
+
+    //把出现过的字节按（频率，字节值）升序排列到 workspace.symbols 和 workspace.leafWeights，返回字节种类数
+    private static int sortLeaves(long[] frequencies, Workspace workspace) {
+        int[] symbols = workspace.symbols;
+        long[] leafWeights = workspace.leafWeights;
+        int leafCount = 0;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            if (frequencies[symbol] > 0) {
+                int position = leafCount++;
+                while (position > 0 && leafWeights[position - 1] > frequencies[symbol]) {
+                    leafWeights[position] = leafWeights[position - 1];
+                    symbols[position] = symbols[position - 1];
+                    position--;
+                }
+                leafWeights[position] = frequencies[symbol];
+                symbols[position] = symbol;
+            }
+        }
+        return leafCount;
+    }
+
+    /*
+     * Moffat-Katajainen 原地算法：在排好序的权重上直接求出不限码长的哈夫曼码长，只需线性时间。
+     * 第一遍从左到右合并，把内部结点的父结点位置记在数组里；第二遍求内部结点深度；第三遍据此给叶子分配深度。
+     * 最长码长超过 maxCodeLength 时返回 false，交给包归并处理。
+     */
+    private static boolean minimumRedundancy(int symbolCount, int maxCodeLength, byte[] lengths, Workspace workspace) {
+        long[] a = workspace.depths;
+        System.arraycopy(workspace.leafWeights, 0, a, 0, symbolCount);
+        int n = symbolCount;
+
+        a[0] += a[1];
+        int root = 0;
+        int leaf = 2;
+        for (int next = 1; next < n - 1; next++) {
+            if (leaf >= n || a[root] < a[leaf]) {
+                a[next] = a[root];
+                a[root++] = next;
+            } else {
+                a[next] = a[leaf++];
+            }
+            if (leaf >= n || (root < next && a[root] < a[leaf])) {
+                a[next] += a[root];
+                a[root++] = next;
+            } else {
+                a[next] += a[leaf++];
+            }
+        }
+
+        a[n - 2] = 0;
+        for (int next = n - 3; next >= 0; next--) {
+            a[next] = a[(int) a[next]] + 1;
+        }
+
+        int available = 1;
+        int used = 0;
+        int depth = 0;
+        root = n - 2;
+        int next = n - 1;
+        while (available > 0) {
+            while (root >= 0 && a[root] == depth) {
+                used++;
+                root--;
+            }
+            while (available > used) {
+                a[next--] = depth;
+                available--;
+            }
+            available = 2 * used;
+            depth++;
+            used = 0;
+        }
+
+        // 权重最小的叶子码长最长
+        if (a[0] > maxCodeLength) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            lengths[workspace.symbols[i]] = (byte) a[i];
+        }
+        return true;
+    }
+
+    public static void checkCodeLengthLimit(int maxCodeLength) {
+        if (maxCodeLength < MIN_CODE_LENGTH_LIMIT || maxCodeLength > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("码长限制必须在 " + MIN_CODE_LENGTH_LIMIT + " 到 " + MAX_CODE_LENGTH + " 之间");
+        }
+    }
+
+    /*
+     * 包归并（package-merge）算法：
+     * 第 0 层是按频率升序排列的叶子；之后每一层把上一层相邻两项打包，再与叶子按权重归并。
+     * 做 maxCodeLength - 1 次后取最后一层最小的 2n - 2 项，每个叶子被选中的次数就是它的码长。
+     */
+    private static void packageMerge(int symbolCount, int maxCodeLength, byte[] lengths, Workspace workspace) {
+        // 叶子已由 sortLeaves 按（频率，字节值）升序排列
+        int[] symbols = workspace.symbols;
+        long[] leafWeights = workspace.leafWeights;
+
+        // items[level][i] < 0 表示叶子 -1 - items[level][i]，否则表示由上一层第 items[level][i] 和其后一项组成的包
+        if (workspace.weights == null) {
+            workspace.weights = new long[MAX_CODE_LENGTH][2 * 256];
+            workspace.items = new int[MAX_CODE_LENGTH][2 * 256];
+        }
+        long[][] weights = workspace.weights;
+        int[][] items = workspace.items;
+        int[] levelSizes = workspace.levelSizes;
+        System.arraycopy(leafWeights, 0, weights[0], 0, symbolCount);
+        for (int i = 0; i < symbolCount; i++) {
+            items[0][i] = -1 - i;
+        }
+        levelSizes[0] = symbolCount;
+
+        for (int level = 1; level < maxCodeLength; level++) {
+            long[] previous = weights[level - 1];
+            int packageCount = levelSizes[level - 1] / 2;
+            levelSizes[level] = symbolCount + packageCount;
+
+            int leaf = 0;
+            int pack = 0;
+            for (int i = 0; i < levelSizes[level]; i++) {
+                long packageWeight = pack < packageCount ? previous[2 * pack] + previous[2 * pack + 1] : Long.MAX_VALUE;
+                if (leaf < symbolCount && leafWeights[leaf] <= packageWeight) {
+                    weights[level][i] = leafWeights[leaf];
+                    items[level][i] = -1 - leaf++;
+                } else {
+                    weights[level][i] = packageWeight;
+                    items[level][i] = 2 * pack++;
+                }
+            }
+        }
+
+        // 最上层选出前 2n-2 项；选中的包总是该层包中最前面的几个，因此下一层选中的也是前 2 * 包数 项
+        int selected = 2 * symbolCount - 2;
+        for (int level = maxCodeLength - 1; level >= 0 && selected > 0; level--) {
+            int packages = 0;
+            for (int i = 0; i < selected; i++) {
+                int item = items[level][i];
+                if (item < 0) {
+                    lengths[symbols[-1 - item]]++;
+                } else {
+                    packages++;
+                }
+            }
+            selected = 2 * packages;
+        }
+    }
+
+    private static int collectLengths(Node node, int depth, byte[] lengths) {
+        if (HuffmanCompression.isLeaf(node)) {
+            lengths[node.data & 0xFF] = (byte) depth;
+            return depth;
+        }
+        return Math.max(collectLengths(node.left, depth + 1, lengths), collectLengths(node.right, depth + 1, lengths));
+    }
+
+    private static void collectFrequencies(Node node, long[] frequencies) {
+        if (HuffmanCompression.isLeaf(node)) {
+            frequencies[node.data & 0xFF] = node.frequency;
+            return;
+        }
+        collectFrequencies(node.left, frequencies);
+        collectFrequencies(node.right, frequencies);
+    }
+
+
+    //由码长推导范式编码：码长短的在前，码长相同的按字节值升序连续编号
+    public static int[] canonicalCodes(byte[] lengths) {
+        int[] codes = new int[256];
+        canonicalCodes(lengths, codes);
+        return codes;
+    }
+
+    //由码长推导范式编码并写入 codes
+    public static void canonicalCodes(byte[] lengths, int[] codes) {
+        Arrays.fill(codes, 0);
+        // 按（码长，字节值）的顺序依次编号，码长增加时编码左移补 0
+        long code = 0;
+        int previousLength = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (lengths[symbol] == length) {
+                    code <<= length - previousLength;
+                    previousLength = length;
+                    codes[symbol] = (int) code++;
+                }
+            }
+        }
+    }
+
+
+    //根据码长重建哈夫曼树，供查表解码器建表
+    public static Node rebuildHuffmanTree(byte[] lengths) {
+        int[] codes = canonicalCodes(lengths);
+        Node root = new Node((byte) 0, 0);
+
+        for (int symbol = 0; symbol < 256; symbol++) {
+            int length = lengths[symbol];
+            Node current = root;
+            for (int bit = length - 1; bit >= 0; bit--) {
+                if ((codes[symbol] >>> bit & 1) == 0) {
+                    if (current.left == null) {
+                        current.left = new Node((byte) 0, 0);
+                    }
+                    current = current.left;
+                } else {
+                    if (current.right == null) {
+                        current.right = new Node((byte) 0, 0);
+                    }
+                    current = current.right;
+                }
+            }
+            if (length != 0) {
+                current.data = (byte) symbol;
+            }
+        }
+        return root;
+    }
+
+
+    //将码长表以游程编码写入压缩文件
+    public static void writeCodeLengths(byte[] lengths, DataOutputStream dataOutputStream) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_CODE_LENGTHS_SIZE);
+        writeCodeLengths(lengths, buffer);
+        dataOutputStream.write(buffer.array(), 0, buffer.position());
+    }
+
+    //将码长表以游程编码写入缓冲区，最多占用 MAX_CODE_LENGTHS_SIZE 个字节
+    public static void writeCodeLengths(byte[] lengths, ByteBuffer buffer) {
+        int symbol = 0;
+        while (symbol < 256) {
+            int length = lengths[symbol];
+            buffer.put((byte) length);
+
+            int run = 1;
+            while (symbol + run < 256 && lengths[symbol + run] == length) {
+                run++;
+            }
+            symbol += run;
+
+            // 其余相同的码长用重复标记表示
+            for (int repeat = run - 1; repeat > 0; repeat -= MAX_REPEAT) {
+                buffer.put((byte) (REPEAT_FLAG | (Math.min(repeat, MAX_REPEAT) - 1)));
+            }
+        }
+    }
+
+    //码长表以游程编码写出后占用的字节数
+    public static int codeLengthsSize(byte[] lengths) {
+        int size = 0;
+        int symbol = 0;
+        while (symbol < 256) {
+            int run = 1;
+            while (symbol + run < 256 && lengths[symbol + run] == lengths[symbol]) {
+                run++;
+            }
+            symbol += run;
+            size += 1 + (run - 1 + MAX_REPEAT - 1) / MAX_REPEAT;
+        }
+        return size;
+    }
+
+    //从压缩文件中读取码长表
+    public static byte[] readCodeLengths(DataInputStream dataInputStream) throws IOException {
+        byte[] lengths = new byte[256];
+        int symbol = 0;
+        while (symbol < 256) {
+            symbol = readToken(dataInputStream.readUnsignedByte(), lengths, symbol);
+        }
+        return lengths;
+    }
+
+    //从缓冲区读取码长表并写入 lengths
+    public static void readCodeLengths(ByteBuffer buffer, byte[] lengths) throws IOException {
+        int symbol = 0;
+        while (symbol < 256) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("码长表已损坏");
+            }
+            symbol = readToken(buffer.get() & 0xFF, lengths, symbol);
+        }
+    }
+
+    //处理码长表中的一个记号，返回下一个字节值
+    private static int readToken(int token, byte[] lengths, int symbol) throws IOException {
+        if ((token & REPEAT_FLAG) == 0) {
+            if (token > MAX_CODE_LENGTH) {
+                throw new IOException("码长表已损坏");
+            }
+            lengths[symbol++] = (byte) token;
+        } else {
+            int repeat = (token & ~REPEAT_FLAG) + 1;
+            if (symbol == 0 || symbol + repeat > 256) {
+                throw new IOException("码长表已损坏");
+            }
+            byte previous = lengths[symbol - 1];
+            for (int i = 0; i < repeat; i++) {
+                lengths[symbol++] = previous;
+            }
+        }
+        return symbol;
+    }
+
+    //预览时跳过码长表
+    public static void skipCodeLengths(DataInputStream dataInputStream) throws IOException {
+        readCodeLengths(dataInputStream);
+    }
+}
@@ -0,0 +1,116 @@
+package allpackage;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//中央目录：文件夹压缩文件末尾的条目索引，预览和查找条目时只需要读取文件尾部
+public class CentralDirectory {
+    // 条目类型
+    public static final int ENTRY_FOLDER = 0;
+    public static final int ENTRY_FILE = 1;
+    // 固实段中的文件
+    public static final int ENTRY_SOLID_FILE = 2;
+
+    // 文件末尾固定长度的结尾记录：中央目录的偏移 + "HDIR"
+    public static final byte[] TRAILER_MAGIC_NUMBER = {0x48, 0x44, 0x49, 0x52}; // "HDIR"
+    public static final int TRAILER_LENGTH = 8 + 4;
+
+    /*
+     * 中央目录布局：
+     *   int  条目数
+     *   每个条目：byte 类型，UTF 相对路径，long 数据偏移，long 原始大小，long 压缩大小
+     *   固实段中的文件再加：long 段的偏移
+     * 数据偏移指向条目路径之后的压缩数据；固实段中的文件指向它在段中按字节对齐的编码数据，
+     * 段的偏移指向段头（段类型和码长表）。文件夹条目的两个大小均为 0。
+     */
+    public static class Entry {
+        public final int type;
+        public final String path;
+        public final long dataOffset;
+        public final long originalSize;
+        public final long compressedSize;
+        public final long segmentOffset;
+
+        public Entry(int type, String path, long dataOffset, long originalSize, long compressedSize) {
+            this(type, path, dataOffset, originalSize, compressedSize, -1);
+        }
+
+        public Entry(int type, String path, long dataOffset, long originalSize, long compressedSize, long segmentOffset) {
+            this.type = type;
+            this.path = path;
+            this.dataOffset = dataOffset;
+            this.originalSize = originalSize;
+            this.compressedSize = compressedSize;
+            this.segmentOffset = segmentOffset;
+        }
+
+        public boolean isFolder() {
+            return type == ENTRY_FOLDER;
+        }
+
+        public boolean isSolid() {
+            return type == ENTRY_SOLID_FILE;
+        }
+    }
+
+
+    //在 directoryOffset 处写入中央目录和结尾记录
+    public static void write(DataOutputStream dataOutputStream, long directoryOffset, List<Entry> entries) throws IOException {
+        dataOutputStream.writeInt(entries.size());
+        for (Entry entry : entries) {
+            dataOutputStream.writeByte(entry.type);
+            dataOutputStream.writeUTF(entry.path);
+            dataOutputStream.writeLong(entry.dataOffset);
+            dataOutputStream.writeLong(entry.originalSize);
+            dataOutputStream.writeLong(entry.compressedSize);
+            if (entry.isSolid()) {
+                dataOutputStream.writeLong(entry.segmentOffset);
+            }
+        }
+
+        dataOutputStream.writeLong(directoryOffset);
+        dataOutputStream.write(TRAILER_MAGIC_NUMBER);
+    }
+
+
+    //从压缩文件尾部读取中央目录，不需要扫描前面的条目
+    public static List<Entry> read(String archivePath) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(archivePath, "r")) {
+            long archiveLength = randomAccessFile.length();
+            if (archiveLength < TRAILER_LENGTH) {
+                throw new IOException("压缩文件缺少中央目录");
+            }
+
+            // 读取结尾记录
+            randomAccessFile.seek(archiveLength - TRAILER_LENGTH);
+            long directoryOffset = randomAccessFile.readLong();
+            byte[] magicNumber = new byte[TRAILER_MAGIC_NUMBER.length];
+            randomAccessFile.readFully(magicNumber);
+            long directoryLength = archiveLength - TRAILER_LENGTH - directoryOffset;
+            if (!Arrays.equals(magicNumber, TRAILER_MAGIC_NUMBER) || directoryOffset < 0 || directoryLength < 4 || directoryLength > Integer.MAX_VALUE) {
+                throw new IOException("中央目录已损坏");
+            }
+
+            // 一次读入整个中央目录再解析
+            byte[] directory = new byte[(int) directoryLength];
+            randomAccessFile.seek(directoryOffset);
+            randomAccessFile.readFully(directory);
+
+            DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(directory));
+            int entryCount = dataInputStream.readInt();
+            List<Entry> entries = new ArrayList<>(Math.min(entryCount, directory.length / 16));
+            for (int i = 0; i < entryCount; i++) {
+                int type = dataInputStream.readUnsignedByte();
+                String path = dataInputStream.readUTF();
+                long dataOffset = dataInputStream.readLong();
+                long originalSize = dataInputStream.readLong();
+                long compressedSize = dataInputStream.readLong();
+                long segmentOffset = type == ENTRY_SOLID_FILE ? dataInputStream.readLong() : -1;
+                entries.add(new Entry(type, path, dataOffset, originalSize, compressedSize, segmentOffset));
+            }
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package allpackage;
+
+/*
+ * 单文件、文件夹和数据流压缩的参数：码长限制、数据块大小、字典以及各种可选的编码方式。
+ * 默认值与不带参数的压缩相同（最大码长、默认数据块大小、零阶编码）；设置方法检查参数并返回对象本身，可以连续调用。
+ * 新的编码选项加在这里，不再给压缩方法增加参数。
+ */
+public class CompressionOptions {
+    private int maxCodeLength = CanonicalHuffman.MAX_CODE_LENGTH;
+    private int blockSize = BlockCodec.DEFAULT_BLOCK_SIZE;
+    private HuffmanDictionary dictionary;
+    private boolean contextModel;
+    private Lz77Codec lz;
+    private boolean interleaved;
+    private boolean pairs;
+    private boolean solid;
+
+    //码长限制，必须在 CanonicalHuffman.MIN_CODE_LENGTH_LIMIT 到 CanonicalHuffman.MAX_CODE_LENGTH 之间，并且不小于字典的码长限制
+    public CompressionOptions maxCodeLength(int maxCodeLength) {
+        CanonicalHuffman.checkCodeLengthLimit(maxCodeLength);
+        if (dictionary != null) {
+            dictionary.checkCodeLengthLimit(maxCodeLength);
+        }
+        this.maxCodeLength = maxCodeLength;
+        return this;
+    }
+
+    //数据块大小，必须在 BlockCodec.MIN_BLOCK_SIZE 到 BlockCodec.MAX_BLOCK_SIZE 之间
+    public CompressionOptions blockSize(int blockSize) {
+        BlockCodec.checkBlockSize(blockSize);
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    //dictionary 不为 null 时数据块（文件夹中为文件条目和固实段）优先使用训练好的字典编码，不再逐块建树和保存码长表（不用于数据流）；
+    //字典的码长限制不能超过 maxCodeLength，否则按字典编码的数据会超出文件头记录的限制
+    public CompressionOptions dictionary(HuffmanDictionary dictionary) {
+        if (dictionary != null) {
+            dictionary.checkCodeLengthLimit(maxCodeLength);
+        }
+        this.dictionary = dictionary;
+        return this;
+    }
+
+    //contextModel 为 true 时再尝试一阶上下文编码，按前一个字节在几张码表之间切换，适合文本类数据（只用于单个文件）
+    public CompressionOptions contextModel(boolean contextModel) {
+        this.contextModel = contextModel;
+        return this;
+    }
+
+    //lz 不为 null 时数据块再尝试 LZ77 编码，适合有大段重复内容的数据（日志、源代码等）
+    public CompressionOptions lz(Lz77Codec lz) {
+        this.lz = lz;
+        return this;
+    }
+
+    //interleaved 为 true 时零阶数据块分成几路交错的位流，码长限制为 InterleavedCodec.TABLE_BITS，换取更快的单线程解码
+    public CompressionOptions interleaved(boolean interleaved) {
+        this.interleaved = interleaved;
+        return this;
+    }
+
+    //pairs 为 true 时数据块再尝试字节对字母表（实验性），低熵数据解码时一次查表可以输出两个字节
+    public CompressionOptions pairs(boolean pairs) {
+        this.pairs = pairs;
+        return this;
+    }
+
+    //solid 为 true 时文件夹使用固实模式：小文件合并成共用一张码长表的固实段，省去每个文件单独的条目头、码长表和建树（只用于文件夹）
+    public CompressionOptions solid(boolean solid) {
+        this.solid = solid;
+        return this;
+    }
+
+    public int maxCodeLength() {
+        return maxCodeLength;
+    }
+
+    public int blockSize() {
+        return blockSize;
+    }
+
+    public HuffmanDictionary dictionary() {
+        return dictionary;
+    }
+
+    public boolean contextModel() {
+        return contextModel;
+    }
+
+    public Lz77Codec lz() {
+        return lz;
+    }
+
+    public boolean interleaved() {
+        return interleaved;
+    }
+
+    public boolean pairs() {
+        return pairs;
+    }
+
+    public boolean solid() {
+        return solid;
+    }
+}
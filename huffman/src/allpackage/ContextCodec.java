@@ -0,0 +1,382 @@
+package allpackage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+ * 一阶上下文模式：按前一个字节选择码表。256 个上下文按各自的字节分布聚成最多 MAX_CLUSTERS 类，
+ * 每类一张码长表，数据块头只需要保存上下文到类的映射和这几张表，不必为 256 个上下文各存一张。
+ * 码长不超过 TABLE_BITS（文件头记录的码长限制更小时取后者），解码时每类只有一张单级查找表，每个符号查一次表。
+ */
+public class ContextCodec {
+    public static final int MAX_CLUSTERS = 16;
+    // 上下文模式的码长上限，也是每张解码表的索引位数
+    public static final int TABLE_BITS = 12;
+    // 聚类时重新分配上下文的最多轮数
+    private static final int MAX_ITERATIONS = 8;
+    // 块头中长度字段、类型字节、类数和上下文映射占用的字节数
+    private static final int HEADER_SIZE = 9 + 1 + 128;
+
+    /*
+     * 上下文数据块（类型字节之后）的布局：
+     *   byte 类数
+     *   128 字节上下文映射：每个字节的高 4 位、低 4 位依次是两个相邻上下文所属的类
+     *   每类一张码长表
+     *   编码数据：每个字节按前一个字节所属类的码表编码，数据块的第一个字节以 0 为上下文
+     */
+
+    //按一阶上下文编码数据块，码长不超过 maxCodeLength 和 TABLE_BITS；完整数据块（含长度字段和类型字节）比 sizeToBeat 小时返回它，否则返回 null；不改变缓冲区的位置
+    public static byte[] encodeBlock(ByteBuffer data, int maxCodeLength, long sizeToBeat) throws IOException {
+        int length = data.remaining();
+        int start = data.position();
+        if (length == 0) {
+            return null;
+        }
+
+        int[] counts = countPairs(data);
+
+        // 一阶条件熵是任何聚类方式都达不到的下限，连它都不能胜过 sizeToBeat 时（例如随机数据）省去聚类
+        if (HEADER_SIZE + conditionalEntropyBits(counts) / 8 >= sizeToBeat) {
+            return null;
+        }
+
+        int[] clusterOf = clusterContexts(counts);
+        int clusterCount = 0;
+        for (int cluster : clusterOf) {
+            clusterCount = Math.max(clusterCount, cluster + 1);
+        }
+        if (clusterCount <= 1) {
+            return null; // 只有一类时就是普通的零阶编码
+        }
+
+        // 每类的频率和码长
+        long[][] frequencies = new long[clusterCount][256];
+        for (int context = 0; context < 256; context++) {
+            long[] clusterFrequencies = frequencies[clusterOf[context]];
+            for (int symbol = 0; symbol < 256; symbol++) {
+                clusterFrequencies[symbol] += counts[(context << 8) | symbol];
+            }
+        }
+        int codeLengthLimit = Math.min(maxCodeLength, TABLE_BITS);
+        byte[] lengths = new byte[clusterCount * 256];
+        byte[] clusterLengths = new byte[256];
+        CanonicalHuffman.Workspace workspace = new CanonicalHuffman.Workspace();
+        long bitCount = 0;
+        int headerSize = HEADER_SIZE;
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            CanonicalHuffman.codeLengths(frequencies[cluster], codeLengthLimit, clusterLengths, workspace);
+            System.arraycopy(clusterLengths, 0, lengths, cluster * 256, 256);
+            bitCount += HuffmanEncoder.encodedBits(frequencies[cluster], clusterLengths);
+            headerSize += CanonicalHuffman.codeLengthsSize(clusterLengths);
+        }
+        long blockSize = headerSize + ((bitCount + 7) >>> 3);
+        if (blockSize >= sizeToBeat) {
+            return null;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate((int) blockSize + 8);
+        block.putInt(length);
+        block.putInt((int) blockSize - 8);
+        block.put((byte) BlockCodec.BLOCK_CONTEXT);
+        block.put((byte) clusterCount);
+        for (int context = 0; context < 256; context += 2) {
+            block.put((byte) ((clusterOf[context] << 4) | clusterOf[context + 1]));
+        }
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            System.arraycopy(lengths, cluster * 256, clusterLengths, 0, 256);
+            CanonicalHuffman.writeCodeLengths(clusterLengths, block);
+        }
+
+        // 每个上下文直接指向所属类的编码和码长，编码循环中只需一次下标计算
+        int[] codes = new int[clusterCount * 256];
+        int[] clusterCodes = new int[256];
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            System.arraycopy(lengths, cluster * 256, clusterLengths, 0, 256);
+            CanonicalHuffman.canonicalCodes(clusterLengths, clusterCodes);
+            System.arraycopy(clusterCodes, 0, codes, cluster * 256, 256);
+        }
+        int[] contextBase = new int[256];
+        for (int context = 0; context < 256; context++) {
+            contextBase[context] = clusterOf[context] << 8;
+        }
+
+        long accumulator = 0;
+        int accumulatorBits = 0;
+        int outputPosition = block.position();
+        int previous = 0;
+        for (int i = start; i < start + length; i++) {
+            int symbol = data.get(i) & 0xFF;
+            int index = contextBase[previous] | symbol;
+            int codeLength = lengths[index];
+            accumulator = (accumulator << codeLength) | codes[index];
+            accumulatorBits += codeLength;
+            if (accumulatorBits >= 32) {
+                accumulatorBits -= 32;
+                block.putInt(outputPosition, (int) (accumulator >>> accumulatorBits));
+                outputPosition += 4;
+            }
+            previous = symbol;
+        }
+        while (accumulatorBits >= 8) {
+            accumulatorBits -= 8;
+            block.put(outputPosition++, (byte) (accumulator >>> accumulatorBits));
+        }
+        if (accumulatorBits > 0) {
+            block.put(outputPosition++, (byte) (accumulator << (8 - accumulatorBits)));
+        }
+        return Arrays.copyOf(block.array(), outputPosition);
+    }
+
+    //统计一阶频率：counts[上下文 * 256 + 字节]，第一个字节的上下文为 0；每次按大端顺序读取 8 个字节，与调用方缓冲区的字节序无关
+    private static int[] countPairs(ByteBuffer buffer) {
+        ByteBuffer data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int[] counts = new int[256 * 256];
+        int end = data.limit();
+        int previous = 0;
+        int i = data.position();
+        for (; i + 8 <= end; i += 8) {
+            long word = data.getLong(i);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                int symbol = (int) (word >>> shift) & 0xFF;
+                counts[(previous << 8) | symbol]++;
+                previous = symbol;
+            }
+        }
+        for (; i < end; i++) {
+            int symbol = data.get(i) & 0xFF;
+            counts[(previous << 8) | symbol]++;
+            previous = symbol;
+        }
+        return counts;
+    }
+
+    //按各上下文自己的分布编码所需的总位数
+    private static double conditionalEntropyBits(int[] counts) {
+        double bits = 0;
+        for (int context = 0; context < 256; context++) {
+            long total = 0;
+            for (int symbol = 0; symbol < 256; symbol++) {
+                total += counts[(context << 8) | symbol];
+            }
+            for (int symbol = 0; symbol < 256; symbol++) {
+                int count = counts[(context << 8) | symbol];
+                if (count != 0) {
+                    bits += count * Math.log((double) total / count);
+                }
+            }
+        }
+        return bits / Math.log(2);
+    }
+
+    /*
+     * 把出现过的上下文聚成最多 MAX_CLUSTERS 类，返回每个上下文所属的类（没有出现的上下文归入第 0 类）。
+     * 以出现次数最多的几个上下文为初始中心，反复把每个上下文分给编码代价最小的类，再按新的分配重新统计各类的分布。
+     */
+    private static int[] clusterContexts(int[] counts) {
+        long[] totals = new long[256];
+        Integer[] order = new Integer[256];
+        int used = 0;
+        for (int context = 0; context < 256; context++) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                totals[context] += counts[(context << 8) | symbol];
+            }
+            order[context] = context;
+            if (totals[context] > 0) {
+                used++;
+            }
+        }
+        int[] clusterOf = new int[256];
+        int clusterCount = Math.min(MAX_CLUSTERS, used);
+        if (clusterCount <= 1) {
+            return clusterOf;
+        }
+        Arrays.fill(clusterOf, -1);
+
+        Arrays.sort(order, (a, b) -> Long.compare(totals[b], totals[a]));
+        // 每个上下文中出现过的字节和次数，计算代价时只需遍历它们
+        int[][] contextSymbols = new int[256][];
+        int[][] contextCounts = new int[256][];
+        for (int context = 0; context < 256; context++) {
+            int distinct = 0;
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (counts[(context << 8) | symbol] != 0) {
+                    distinct++;
+                }
+            }
+            contextSymbols[context] = new int[distinct];
+            contextCounts[context] = new int[distinct];
+            distinct = 0;
+            for (int symbol = 0; symbol < 256; symbol++) {
+                int count = counts[(context << 8) | symbol];
+                if (count != 0) {
+                    contextSymbols[context][distinct] = symbol;
+                    contextCounts[context][distinct++] = count;
+                }
+            }
+        }
+        double[] cost = new double[clusterCount * 256];
+        long[] clusterCounts = new long[clusterCount * 256];
+        long[] clusterTotals = new long[clusterCount];
+        // 初始时每个中心单独一类，其余上下文在第一轮重新分配时按代价选择
+        for (int i = 0; i < clusterCount; i++) {
+            clusterOf[order[i]] = i;
+        }
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            Arrays.fill(clusterCounts, 0);
+            Arrays.fill(clusterTotals, 0);
+            for (int context = 0; context < 256; context++) {
+                if (clusterOf[context] < 0) {
+                    continue;
+                }
+                int base = clusterOf[context] << 8;
+                for (int i = 0; i < contextSymbols[context].length; i++) {
+                    clusterCounts[base | contextSymbols[context][i]] += contextCounts[context][i];
+                }
+                clusterTotals[clusterOf[context]] += totals[context];
+            }
+
+            // 每类中每个字节的编码代价（负对数概率），未出现的字节按半次出现估计
+            for (int cluster = 0; cluster < clusterCount; cluster++) {
+                double total = clusterTotals[cluster] + 128.0;
+                for (int symbol = 0; symbol < 256; symbol++) {
+                    cost[(cluster << 8) | symbol] = -Math.log((clusterCounts[(cluster << 8) | symbol] + 0.5) / total);
+                }
+            }
+
+            boolean changed = false;
+            for (int context = 0; context < 256; context++) {
+                if (totals[context] == 0) {
+                    continue;
+                }
+                int best = clusterOf[context];
+                double bestCost = Double.MAX_VALUE;
+                int[] symbols = contextSymbols[context];
+                int[] symbolCounts = contextCounts[context];
+                for (int cluster = 0; cluster < clusterCount; cluster++) {
+                    int base = cluster << 8;
+                    double contextCost = 0;
+                    for (int i = 0; i < symbols.length; i++) {
+                        contextCost += symbolCounts[i] * cost[base | symbols[i]];
+                    }
+                    if (contextCost < bestCost) {
+                        bestCost = contextCost;
+                        best = cluster;
+                    }
+                }
+                if (best != clusterOf[context]) {
+                    clusterOf[context] = best;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+
+        // 去掉空类，类的编号保持连续
+        int[] renumber = new int[clusterCount];
+        Arrays.fill(renumber, -1);
+        int next = 0;
+        for (int context = 0; context < 256; context++) {
+            if (totals[context] > 0 && renumber[clusterOf[context]] < 0) {
+                renumber[clusterOf[context]] = next++;
+            }
+        }
+        for (int context = 0; context < 256; context++) {
+            clusterOf[context] = totals[context] > 0 ? renumber[clusterOf[context]] : 0;
+        }
+        return clusterOf;
+    }
+
+
+    //解码上下文数据块中类型字节之后的部分，输出 originalLength 个字节
+    public static void decodeBlock(ByteBuffer block, int originalLength, OutputStream outputStream) throws IOException {
+        byte[] output = new byte[originalLength];
+        decodeBlock(block, output);
+        outputStream.write(output);
+    }
+
+    //解码到 output，解码的字节数为 output 的长度
+    public static void decodeBlock(ByteBuffer block, byte[] output) throws IOException {
+        int clusterCount = block.get() & 0xFF;
+        if (clusterCount < 1 || clusterCount > MAX_CLUSTERS) {
+            throw new IOException("数据块已损坏");
+        }
+        int[] contextBase = new int[256];
+        for (int context = 0; context < 256; context += 2) {
+            int clusters = block.get() & 0xFF;
+            contextBase[context] = (clusters >>> 4) << TABLE_BITS;
+            contextBase[context + 1] = (clusters & 0x0F) << TABLE_BITS;
+        }
+
+        // 每类一张单级表，表项为 码长 << 8 | 字节，码长为 0 表示无效编码
+        char[] table = new char[clusterCount << TABLE_BITS];
+        byte[] lengths = new byte[256];
+        int[] codes = new int[256];
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            CanonicalHuffman.readCodeLengths(block, lengths);
+            CanonicalHuffman.canonicalCodes(lengths, codes);
+            for (int symbol = 0; symbol < 256; symbol++) {
+                int length = lengths[symbol];
+                if (length == 0) {
+                    continue;
+                }
+                if (length > TABLE_BITS) {
+                    throw new IOException("数据块已损坏");
+                }
+                int first = (cluster << TABLE_BITS) | (codes[symbol] << (TABLE_BITS - length));
+                Arrays.fill(table, first, first + (1 << (TABLE_BITS - length)), (char) ((length << 8) | symbol));
+            }
+        }
+        for (int context = 0; context < 256; context++) {
+            if (contextBase[context] >= table.length) {
+                throw new IOException("数据块已损坏");
+            }
+        }
+
+        // 位缓冲区按高位对齐；输入结束后补 0，最后检查没有用到补出的位
+        int position = block.position();
+        int end = block.limit();
+        long availableBits = (end - position) * 8L;
+        long consumedBits = 0;
+        long buffer = 0;
+        int bufferBits = 0;
+        int previous = 0;
+        for (int i = 0; i < output.length; i++) {
+            if (bufferBits < TABLE_BITS) {
+                if (end - position >= 8) {
+                    int bytes = (64 - bufferBits) >>> 3;
+                    buffer |= block.getLong(position) >>> bufferBits;
+                    bufferBits += bytes << 3;
+                    position += bytes;
+                } else {
+                    while (bufferBits <= 56 && position < end) {
+                        buffer |= (block.get(position++) & 0xFFL) << (56 - bufferBits);
+                        bufferBits += 8;
+                    }
+                    if (bufferBits < TABLE_BITS) {
+                        bufferBits = 64; // 输入已经读完，缓冲区左移时补入的都是 0
+                    }
+                }
+            }
+            int entry = table[contextBase[previous] | (int) (buffer >>> (64 - TABLE_BITS))];
+            int length = entry >>> 8;
+            if (length == 0) {
+                throw new IOException("数据块已损坏");
+            }
+            previous = entry & 0xFF;
+            output[i] = (byte) previous;
+            buffer <<= length;
+            bufferBits -= length;
+            consumedBits += length;
+        }
+        if (consumedBits > availableBits) {
+            throw new IOException("数据块已损坏");
+        }
+        block.position(block.limit());
+    }
+}
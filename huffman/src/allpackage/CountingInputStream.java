@@ -0,0 +1,56 @@
+package allpackage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+//记录已读取字节数的输入流，用于在解析文件头之后得到数据在文件中的位置
+public class CountingInputStream extends FilterInputStream {
+    private long count;
+    private long markedCount;
+
+    public CountingInputStream(InputStream inputStream) {
+        super(inputStream);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = in.read();
+        if (value != -1) {
+            count++;
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int bytesRead = in.read(buffer, offset, length);
+        if (bytesRead > 0) {
+            count += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        in.mark(readLimit);
+        markedCount = count;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        in.reset();
+        count = markedCount;
+    }
+}
@@ -0,0 +1,30 @@
+package allpackage;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+//记录已写出字节数的输出流，用于得到条目在压缩文件中的偏移（DataOutputStream.size() 超过 2GB 后不再准确）
+public class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    public CountingOutputStream(OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        out.write(buffer, offset, length);
+        count += length;
+    }
+}
@@ -0,0 +1,121 @@
+package allpackage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * 抽样熵估计：在输入中均匀取若干小段统计字节频率，由这份部分频率计算香农熵，
+ * 并用它生成的码长估计哈夫曼编码能达到的压缩率。只读取很小一部分数据，
+ * 用来在完整统计频率之前判断数据是否值得编码，也可以快速查看大文件夹的压缩潜力。
+ */
+public class EntropyEstimator {
+    // 每个抽样段的大小和最多抽取的段数；不超过两者乘积的输入直接全部统计
+    public static final int SAMPLE_CHUNK_SIZE = 1 << 12;
+    public static final int SAMPLE_CHUNKS = 64;
+    public static final int MAX_SAMPLE_SIZE = SAMPLE_CHUNK_SIZE * SAMPLE_CHUNKS;
+    // 预计压缩率不低于这个值时认为不值得编码，最多放弃 0.5% 的压缩收益换取省去频率统计和编码
+    public static final double STORE_THRESHOLD = 0.995;
+
+    //估计结果
+    public static class Estimate {
+        public final long totalBytes;
+        public final long sampledBytes;
+        // 抽样数据的香农熵，单位为位/字节
+        public final double entropy;
+        // 按抽样频率生成的哈夫曼码长编码抽样数据的平均码长，单位为位/字节
+        public final double huffmanBits;
+        // 码长表占用的字节数
+        public final int tableSize;
+
+        Estimate(long totalBytes, long sampledBytes, double entropy, double huffmanBits, int tableSize) {
+            this.totalBytes = totalBytes;
+            this.sampledBytes = sampledBytes;
+            this.entropy = entropy;
+            this.huffmanBits = huffmanBits;
+            this.tableSize = tableSize;
+        }
+
+        //预计的哈夫曼编码数据加码长表的大小
+        public long estimatedSize() {
+            return (long) Math.ceil(totalBytes * huffmanBits / 8) + tableSize;
+        }
+
+        //预计压缩率（压缩后大小 / 原始大小）
+        public double estimatedRatio() {
+            return totalBytes == 0 ? 1.0 : (double) estimatedSize() / totalBytes;
+        }
+
+        //按熵计算的压缩率下限
+        public double entropyRatio() {
+            return entropy / 8;
+        }
+
+        //哈夫曼编码预计不能明显缩小数据，应当原样保存
+        public boolean isIncompressible() {
+            return estimatedRatio() >= STORE_THRESHOLD;
+        }
+    }
+
+    //估计缓冲区中 position 到 limit 之间的数据，不改变缓冲区的位置
+    public static Estimate estimate(ByteBuffer data) {
+        return estimate(Collections.singletonList(data));
+    }
+
+    //估计一个文件（通过内存映射，只有抽到的页会被读入）
+    public static Estimate estimate(File file) throws IOException {
+        try (FileInputStream fileInputStream = new FileInputStream(file)) {
+            return estimate(MappedInput.map(fileInputStream.getChannel()));
+        }
+    }
+
+    //估计依次排列的多个缓冲区（例如分段映射的大文件），抽样段按各缓冲区的大小分配
+    public static Estimate estimate(List<ByteBuffer> windows) {
+        long totalBytes = 0;
+        for (ByteBuffer window : windows) {
+            totalBytes += window.remaining();
+        }
+
+        long[] frequencies = new long[256];
+        long sampledBytes = 0;
+        for (ByteBuffer window : windows) {
+            int length = window.remaining();
+            if (totalBytes <= MAX_SAMPLE_SIZE) {
+                ByteHistogram.count(window, frequencies);
+                sampledBytes += length;
+                continue;
+            }
+
+            // 段数按窗口占总大小的比例分配，段的起点在窗口内均匀分布
+            int chunks = (int) Math.max(1, (long) SAMPLE_CHUNKS * length / totalBytes);
+            int chunkSize = Math.min(SAMPLE_CHUNK_SIZE, length);
+            for (int i = 0; i < chunks; i++) {
+                long offset = chunks == 1 ? 0 : (long) (length - chunkSize) * i / (chunks - 1);
+                ByteBuffer chunk = window.duplicate();
+                chunk.position(window.position() + (int) offset).limit(window.position() + (int) offset + chunkSize);
+                ByteHistogram.count(chunk, frequencies);
+                sampledBytes += chunkSize;
+            }
+        }
+
+        if (sampledBytes == 0) {
+            return new Estimate(totalBytes, 0, 0, 0, 0);
+        }
+
+        double entropy = 0;
+        for (long frequency : frequencies) {
+            if (frequency > 0) {
+                double p = (double) frequency / sampledBytes;
+                entropy -= p * Math.log(p) / Math.log(2);
+            }
+        }
+
+        byte[] codeLengths = new byte[256];
+        CanonicalHuffman.codeLengths(frequencies, CanonicalHuffman.MAX_CODE_LENGTH, codeLengths, new CanonicalHuffman.Workspace());
+        double huffmanBits = (double) HuffmanEncoder.encodedBits(frequencies, codeLengths) / sampledBytes;
+        return new Estimate(totalBytes, sampledBytes, entropy, huffmanBits, CanonicalHuffman.codeLengthsSize(codeLengths));
+    }
+}
@@ -1,15 +1,50 @@
 package allpackage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static allpackage.HuffmanCompression.*;
 
 public class FolderCompression {
+    // 默认同时压缩的文件数
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    // 默认等待写出的文件原始大小之和的上限
+    public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L << 20;
+    // 超过这个大小的文件不在内存中缓冲，轮到它时直接编码写入压缩文件
+    public static final long STREAMED_ENTRY_SIZE = 64L << 20;
+    // 文件条目中“最后一个字节有效位数”为这个值时表示原样保存，正常编码时为 1 到 8
+    public static final int STORED_ENTRY = 0;
+    // 有效位数加上这个标志时表示按字典编码，条目中没有码长表
+    public static final int DICTIONARY_ENTRY = 0x10;
+    // 固实模式下不超过这个大小的文件合并到固实段中
+    public static final long SOLID_FILE_SIZE = 64L << 10;
+    // 固实段中文件原始大小之和达到这个值时开始新的一段
+    public static final long SOLID_SEGMENT_SIZE = 1L << 20;
 
     //压缩文件夹
     public static void compressFolder(String inputFolderPath, String outputFilePath) {
+        compressFolder(inputFolderPath, outputFilePath, new CompressionOptions());
+    }
+
+    //按 options 压缩文件夹：使用其中的码长限制、字典和固实模式；上下文模式、LZ77、交错位流和字节对字母表只用于单个文件和数据流，文件夹不使用
+    public static void compressFolder(String inputFolderPath, String outputFilePath, CompressionOptions options) {
+        compressFolder(inputFolderPath, outputFilePath, options, DEFAULT_PARALLELISM, DEFAULT_MAX_IN_FLIGHT_BYTES);
+    }
+
+    //并发压缩文件夹：最多 parallelism 个文件同时压缩，等待写出的文件原始大小之和不超过 maxInFlightBytes
+    public static void compressFolder(String inputFolderPath, String outputFilePath, CompressionOptions options, int parallelism, long maxInFlightBytes) {
+        int maxCodeLength = options.maxCodeLength();
+        HuffmanDictionary dictionary = options.dictionary();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
         try {
             // 检查输出文件路径是否为null，如果是，设置为默认路径
             if (outputFilePath == null || outputFilePath.isEmpty()) {
@@ -18,132 +53,368 @@ public class FolderCompression {
 
             FileOutputStream fileOutputStream = new FileOutputStream(outputFilePath);
             BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream);
-            DataOutputStream dataOutputStream = new DataOutputStream(bufferedOutputStream);
+            CountingOutputStream countingOutputStream = new CountingOutputStream(bufferedOutputStream);
+            DataOutputStream dataOutputStream = new DataOutputStream(countingOutputStream);
 
-            // 写入 magic number
+            // 写入 magic number 和格式版本
             dataOutputStream.write(FOLDER_MAGIC_NUMBER);
+            writeFormatVersion(dataOutputStream, maxCodeLength);
 
             // 获取并写入主文件夹名称
             File inputFolder = new File(inputFolderPath);
             String folderName = inputFolder.getName();
             dataOutputStream.writeUTF(folderName);
+            dataOutputStream.writeInt(dictionary != null ? dictionary.id : HuffmanDictionary.NO_DICTIONARY);
+
+            // 按递归顺序列出所有条目，再并发压缩、按顺序写出
+            List<FolderEntry> entries = new ArrayList<>();
+            collectEntries(inputFolder, "", entries);
+            List<FolderEntry> units = options.solid() ? groupSolidSegments(entries) : entries;
+            CentralDirectory.Entry[] directoryEntries = new CentralDirectory.Entry[entries.size()];
+            writeEntries(units, countingOutputStream, dataOutputStream, directoryEntries, maxCodeLength, dictionary, pool, maxInFlightBytes);
 
-            // 压缩文件夹
-            compressFolderRecursive(new File(inputFolderPath), "", dataOutputStream);
+            // 在末尾写入中央目录
+            CentralDirectory.write(dataOutputStream, countingOutputStream.getCount(), Arrays.asList(directoryEntries));
 
             // 关闭流
             dataOutputStream.close();
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    //文件夹中的一个条目，文件条目在压缩任务完成后才能写出；大文件没有压缩任务，写出时直接编码
+    private static class FolderEntry {
+        final File file;
+        final String relativePath;
+        final boolean directory;
+        // 在中央目录中的位置，与递归列出的顺序一致
+        final int index;
+        ForkJoinTask<byte[]> task;
+        long originalSize;
+
+        // 固实段本身没有对应的文件，members 为段中的小文件
+        List<FolderEntry> members;
+        long segmentSize;
+        // 固实段中的文件：编码数据在段中的偏移和长度
+        long segmentOffset;
+        long compressedSize;
+
+        FolderEntry(File file, String relativePath, int index) {
+            this.file = file;
+            this.relativePath = relativePath;
+            this.directory = file != null && file.isDirectory();
+            this.index = index;
+        }
+
+        boolean isSegment() {
+            return members != null;
+        }
+
+        long size() {
+            return isSegment() ? segmentSize : file.length();
         }
     }
 
-    //递归压缩的具体过程
-    private static void compressFolderRecursive(File folder, String relativePath, DataOutputStream dataOutputStream) throws IOException {
+    //递归列出条目，顺序与解压时读取的顺序一致
+    private static void collectEntries(File folder, String relativePath, List<FolderEntry> entries) {
 
         // 列出文件夹中的所有文件和子文件夹
         File[] files = folder.listFiles();
         if (files != null) {
             for (File file : files) {
+                entries.add(new FolderEntry(file, relativePath + file.getName(), entries.size()));
                 if (file.isDirectory()) {
-                    // 写入文件夹标识符和相对路径
-                    dataOutputStream.writeUTF("F");
-                    dataOutputStream.writeUTF(relativePath + file.getName());
                     // 递归处理子文件夹，传递相对路径
-                    compressFolderRecursive(file, relativePath + file.getName() + File.separator, dataOutputStream);
-                } else {
-                    // 写入文件标识符和相对路径
-                    dataOutputStream.writeUTF("FI");
-                    dataOutputStream.writeUTF(relativePath + file.getName());
-                    // 处理文件
-                    compressFile(file, dataOutputStream);
+                    collectEntries(file, relativePath + file.getName() + File.separator, entries);
                 }
             }
         }
     }
 
-    //压缩单个文件
-    private static void compressFile(File file, DataOutputStream dataOutputStream) {
-        try {
-            FileInputStream fileInputStream = new FileInputStream(file);
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream);
+    /*
+     * 按顺序把连续的小文件合并成固实段，每段原始大小之和约为 SOLID_SEGMENT_SIZE；只有一个文件的段仍按普通条目写出。
+     * 遇到大文件时结束当前的段，因此同一段的文件在目录中连续排列，中间最多夹着文件夹条目，解压时每段的段头只读取一次。
+     */
+    private static List<FolderEntry> groupSolidSegments(List<FolderEntry> entries) {
+        List<FolderEntry> units = new ArrayList<>();
+        FolderEntry segment = null;
+        for (FolderEntry entry : entries) {
+            if (entry.directory) {
+                units.add(entry);
+                continue;
+            }
+            if (entry.file.length() > SOLID_FILE_SIZE) {
+                units.add(entry);
+                segment = null;
+                continue;
+            }
+            if (segment == null) {
+                segment = new FolderEntry(null, null, -1);
+                segment.members = new ArrayList<>();
+                units.add(segment);
+            }
+            segment.members.add(entry);
+            segment.segmentSize += entry.file.length();
+            if (segment.segmentSize >= SOLID_SEGMENT_SIZE) {
+                segment = null;
+            }
+        }
 
-            // 构建哈夫曼树
-            bufferedInputStream.mark(Integer.MAX_VALUE);
-            Node root = buildHuffmanTree(convertInputStreamToByteArray(bufferedInputStream));
+        for (int i = 0; i < units.size(); i++) {
+            if (units.get(i).isSegment() && units.get(i).members.size() == 1) {
+                units.set(i, units.get(i).members.get(0));
+            }
+        }
+        return units;
+    }
 
-            // 生成哈夫曼编码表
-            HashMap<Byte, String> huffmanCodes = generateHuffmanCodes(root);
+    //提前提交后面文件的压缩任务，同时按条目顺序把已完成的条目追加到压缩文件，中央目录的条目按各自的位置填入 directoryEntries
+    private static void writeEntries(List<FolderEntry> entries, CountingOutputStream countingOutputStream, DataOutputStream dataOutputStream,
+                                     CentralDirectory.Entry[] directoryEntries, int maxCodeLength, HuffmanDictionary dictionary, ForkJoinPool pool, long maxInFlightBytes) throws IOException {
+        ArrayDeque<FolderEntry> pending = new ArrayDeque<>();
+        int maxPendingEntries = pool.getParallelism() * 4;
+        long inFlightBytes = 0;
+
+        for (FolderEntry entry : entries) {
+            if (entry.isSegment() || (!entry.directory && entry.file.length() <= STREAMED_ENTRY_SIZE)) {
+                long size = entry.size();
+                // 超出内存或数量限制时先写出最早的条目；队列为空时大文件也可以单独压缩
+                while (!pending.isEmpty() && (inFlightBytes + size > maxInFlightBytes || pending.size() >= maxPendingEntries)) {
+                    inFlightBytes -= writeEntry(pending.poll(), countingOutputStream, dataOutputStream, directoryEntries, maxCodeLength, dictionary, pool);
+                }
+                entry.task = pool.submit(() -> {
+                    try {
+                        return entry.isSegment() ? compressSegment(entry, maxCodeLength, dictionary) : compressFile(entry, maxCodeLength, dictionary, pool);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                inFlightBytes += size;
+            }
+            pending.add(entry);
+        }
 
-            // 重置输入流
-            bufferedInputStream.reset();
+        while (!pending.isEmpty()) {
+            writeEntry(pending.poll(), countingOutputStream, dataOutputStream, directoryEntries, maxCodeLength, dictionary, pool);
+        }
+    }
 
-            // 创建一个临时的字节数组输出流来存储压缩数据
-            ByteArrayOutputStream tempOutputStream = new ByteArrayOutputStream();
-            int effectiveBitsLastByte = compressBinaryData(bufferedInputStream, huffmanCodes, tempOutputStream);
-            byte[] compressedData = tempOutputStream.toByteArray();
+    //写出一个条目并记录到中央目录，返回它占用的在途字节数
+    private static long writeEntry(FolderEntry entry, CountingOutputStream countingOutputStream, DataOutputStream dataOutputStream,
+                                   CentralDirectory.Entry[] directoryEntries, int maxCodeLength, HuffmanDictionary dictionary, ForkJoinPool pool) throws IOException {
+        if (entry.directory) {
+            // 写入文件夹标识符和相对路径
+            dataOutputStream.writeUTF("F");
+            dataOutputStream.writeUTF(entry.relativePath);
+            directoryEntries[entry.index] = new CentralDirectory.Entry(CentralDirectory.ENTRY_FOLDER, entry.relativePath, countingOutputStream.getCount(), 0, 0);
+            return 0;
+        }
 
-            // 写入压缩数据的长度和最后一个字节中有效位的数量
-            dataOutputStream.writeInt(compressedData.length);
-            dataOutputStream.writeByte(effectiveBitsLastByte);
+        if (entry.isSegment()) {
+            // 固实段只写一个标识符，段中文件的路径和位置都记录在中央目录中
+            dataOutputStream.writeUTF("SG");
+            long segmentOffset = countingOutputStream.getCount();
+            dataOutputStream.write(join(entry.task));
+            for (FolderEntry member : entry.members) {
+                directoryEntries[member.index] = new CentralDirectory.Entry(CentralDirectory.ENTRY_SOLID_FILE, member.relativePath,
+                        segmentOffset + member.segmentOffset, member.originalSize, member.compressedSize, segmentOffset);
+            }
+            return entry.segmentSize;
+        }
 
-            // 将哈夫曼编码表写入压缩文件
-            writeHuffmanCodesToStream(huffmanCodes, dataOutputStream);
+        // 写入文件标识符和相对路径，再写入压缩后的文件
+        dataOutputStream.writeUTF("FI");
+        dataOutputStream.writeUTF(entry.relativePath);
+        long dataOffset = countingOutputStream.getCount();
+        if (entry.task == null) {
+            // 大文件直接编码写入压缩文件，不占用堆内存
+            try (FileInputStream fileInputStream = new FileInputStream(entry.file)) {
+                entry.originalSize = fileInputStream.getChannel().size();
+                writeFileEntry(MappedInput.map(fileInputStream.getChannel()), entry.originalSize, maxCodeLength, dictionary, pool, dataOutputStream);
+            }
+        } else {
+            dataOutputStream.write(join(entry.task));
+        }
+        long compressedSize = countingOutputStream.getCount() - dataOffset;
+        directoryEntries[entry.index] = new CentralDirectory.Entry(CentralDirectory.ENTRY_FILE, entry.relativePath, dataOffset, entry.originalSize, compressedSize);
+        return entry.task == null ? 0 : entry.file.length();
+    }
 
-            // 将压缩后的数据写入输出流
-            dataOutputStream.write(compressedData, 0, compressedData.length);
+    private static byte[] join(ForkJoinTask<byte[]> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
-            // 关闭流
-            bufferedInputStream.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /*
+     * 在内存中压缩固实段：段中所有文件共用一次频率统计和一张码长表。
+     * 段的布局为 byte 段类型（与数据块类型相同）、码长表（原样保存和使用字典时没有），之后依次是每个文件的数据；
+     * 每个文件的编码从字节边界开始，最多浪费 7 位，但可以按中央目录中的偏移单独解码。
+     */
+    private static byte[] compressSegment(FolderEntry segment, int maxCodeLength, HuffmanDictionary dictionary) throws IOException {
+        List<FolderEntry> members = segment.members;
+        byte[][] contents = new byte[members.size()][];
+        long[] frequencies = new long[256];
+        long totalSize = 0;
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = Files.readAllBytes(members.get(i).file.toPath());
+            members.get(i).originalSize = contents[i].length;
+            totalSize += contents[i].length;
+            countByteFrequencies(ByteBuffer.wrap(contents[i]), frequencies);
+        }
+        byte[] codeLengths = codeLengths(frequencies, maxCodeLength, dictionary);
+        long payloadBytes = (HuffmanEncoder.encodedBits(frequencies, codeLengths) + 7) / 8 + contents.length;
+        int segmentType = BlockCodec.isIncompressible(totalSize, payloadBytes, codeLengths) ? BlockCodec.BLOCK_STORED : BlockCodec.BLOCK_HUFFMAN;
+        if (dictionary != null && BlockCodec.prefersDictionary(totalSize, (dictionary.encodedBits(frequencies) + 7) / 8 + contents.length, payloadBytes, codeLengths)) {
+            segmentType = BlockCodec.BLOCK_DICTIONARY;
+        }
+        boolean stored = segmentType == BlockCodec.BLOCK_STORED;
+
+        ByteArrayOutputStream segmentOutputStream = new ByteArrayOutputStream((int) totalSize + 1024);
+        DataOutputStream dataOutputStream = new DataOutputStream(segmentOutputStream);
+        dataOutputStream.writeByte(segmentType);
+        HuffmanEncoder encoder = null;
+        if (segmentType == BlockCodec.BLOCK_DICTIONARY) {
+            encoder = dictionary.encoder();
+        } else if (!stored) {
+            CanonicalHuffman.writeCodeLengths(codeLengths, dataOutputStream);
+            encoder = new HuffmanEncoder(codeLengths);
+        }
+
+        for (int i = 0; i < contents.length; i++) {
+            FolderEntry member = members.get(i);
+            member.segmentOffset = dataOutputStream.size();
+            if (stored) {
+                dataOutputStream.write(contents[i]);
+            } else {
+                encoder.start(dataOutputStream);
+                encoder.write(contents[i], 0, contents[i].length);
+                encoder.finish();
+            }
+            member.compressedSize = dataOutputStream.size() - member.segmentOffset;
         }
+        return segmentOutputStream.toByteArray();
     }
 
-    //对原始数据进行哈夫曼编码，并写入输出流
-    public static int compressBinaryData(InputStream inputStream, HashMap<Byte, String> huffmanCodes, ByteArrayOutputStream tempOutputStream) throws IOException {
-        int bitCount = 0;
-        int outputByte = 0;
-        int effectiveBitsLastByte = 8;  // 默认情况下，假设最后一个字节完全有效
-
-        byte[] buffer = new byte[1024];
-        int bytesRead;
-
-        // 逐块读取数据并应用哈夫曼编码
-        while ((bytesRead = inputStream.read(buffer)) != -1) {
-            for (int i = 0; i < bytesRead; i++) {
-                String code = huffmanCodes.get(buffer[i]);
-                for (char bit : code.toCharArray()) {
-                    outputByte <<= 1;
-                    if (bit == '1') {
-                        outputByte |= 1;
-                    }
-                    bitCount++;
+    //在内存中压缩单个文件，返回完整的文件条目数据
+    private static byte[] compressFile(FolderEntry entry, int maxCodeLength, HuffmanDictionary dictionary, ForkJoinPool pool) throws IOException {
+        try (FileInputStream fileInputStream = new FileInputStream(entry.file)) {
+            // 把文件映射到内存，频率统计和编码都直接读取映射的缓冲区
+            List<ByteBuffer> windows = MappedInput.map(fileInputStream.getChannel());
+            entry.originalSize = fileInputStream.getChannel().size();
 
-                    // 当累积到8位，写入输出流
-                    if (bitCount == 8) {
-                        tempOutputStream.write(outputByte);
-                        bitCount = 0;
-                        outputByte = 0;
-                    }
-                }
+            ByteArrayOutputStream entryOutputStream = new ByteArrayOutputStream((int) Math.min(entry.originalSize + 1024, Integer.MAX_VALUE - 8));
+            writeFileEntry(windows, entry.originalSize, maxCodeLength, dictionary, pool, new DataOutputStream(entryOutputStream));
+            return entryOutputStream.toByteArray();
+        }
+    }
+
+    /*
+     * 写出文件条目：long 原始大小，long 压缩数据长度，最后一个字节中有效位的数量，码长表，编码数据。
+     * 压缩数据的长度由字节频率和码长预先算出，因此可以先写长度再边编码边写出数据。
+     * 编码不能缩小文件时有效位数写为 STORED_ENTRY，之后没有码长表，直接是原始字节；
+     * 按字典编码时有效位数加上 DICTIONARY_ENTRY 标志，同样没有码长表。
+     */
+    private static void writeFileEntry(List<ByteBuffer> windows, long originalSize, int maxCodeLength, HuffmanDictionary dictionary, ForkJoinPool pool,
+                                       DataOutputStream dataOutputStream) throws IOException {
+        // 较大的文件先抽样估计，明显不能压缩时直接原样保存
+        if (originalSize > EntropyEstimator.MAX_SAMPLE_SIZE && EntropyEstimator.estimate(windows).isIncompressible()) {
+            writeStoredEntry(windows, originalSize, dataOutputStream);
+            return;
+        }
+
+        // 统计字节频率（大文件分段并行统计），生成范式哈夫曼码长表
+        long[] frequencies = new long[256];
+        for (ByteBuffer window : windows) {
+            ByteHistogram.count(window, frequencies, pool);
+        }
+        byte[] codeLengths = codeLengths(frequencies, maxCodeLength, dictionary);
+        long bitCount = HuffmanEncoder.encodedBits(frequencies, codeLengths);
+
+        if (dictionary != null) {
+            long dictionaryBits = dictionary.encodedBits(frequencies);
+            if (BlockCodec.prefersDictionary(originalSize, (dictionaryBits + 7) >>> 3, (bitCount + 7) >>> 3, codeLengths)) {
+                writeEncodedEntry(windows, originalSize, dictionaryBits, null, dictionary.encoder(), dataOutputStream);
+                return;
             }
         }
 
-        // 处理最后一个字节（如果有）
-        if (bitCount > 0) {
-            effectiveBitsLastByte = bitCount;
-            outputByte <<= (8 - bitCount);  // 左移以填充剩余的位
-            tempOutputStream.write(outputByte);
+        if (BlockCodec.isIncompressible(originalSize, (bitCount + 7) >>> 3, codeLengths)) {
+            writeStoredEntry(windows, originalSize, dataOutputStream);
+            return;
         }
+        writeEncodedEntry(windows, originalSize, bitCount, codeLengths, new HuffmanEncoder(codeLengths), dataOutputStream);
+    }
 
-        // 返回最后一个字节中有效位的数量
-        return effectiveBitsLastByte;
+    //生成条目自带的码长表；字典模式下多数条目用不到它，由频率直接生成，不建哈夫曼树
+    private static byte[] codeLengths(long[] frequencies, int maxCodeLength, HuffmanDictionary dictionary) {
+        if (dictionary == null) {
+            return CanonicalHuffman.codeLengths(buildHuffmanTree(frequencies), maxCodeLength);
+        }
+        byte[] codeLengths = new byte[256];
+        CanonicalHuffman.codeLengths(frequencies, maxCodeLength, codeLengths, new CanonicalHuffman.Workspace());
+        return codeLengths;
+    }
+
+    //写出编码的文件条目，codeLengths 为 null 时表示按字典编码
+    private static void writeEncodedEntry(List<ByteBuffer> windows, long originalSize, long bitCount, byte[] codeLengths, HuffmanEncoder encoder,
+                                          DataOutputStream dataOutputStream) throws IOException {
+        // 写入原始大小、压缩数据的长度和最后一个字节中有效位的数量
+        dataOutputStream.writeLong(originalSize);
+        dataOutputStream.writeLong((bitCount + 7) >>> 3);
+        dataOutputStream.writeByte(effectiveBits(bitCount) | (codeLengths == null ? DICTIONARY_ENTRY : 0));
+
+        // 将码长表写入压缩文件
+        if (codeLengths != null) {
+            CanonicalHuffman.writeCodeLengths(codeLengths, dataOutputStream);
+        }
+
+        // 编码数据直接写入输出流
+        encoder.start(dataOutputStream);
+        for (ByteBuffer window : windows) {
+            encoder.write(window);
+        }
+        encoder.finish();
+    }
+
+    //原样保存的文件条目：两个长度都是原始大小，有效位数为 STORED_ENTRY，之后是原始字节
+    private static void writeStoredEntry(List<ByteBuffer> windows, long originalSize, DataOutputStream dataOutputStream) throws IOException {
+        dataOutputStream.writeLong(originalSize);
+        dataOutputStream.writeLong(originalSize);
+        dataOutputStream.writeByte(STORED_ENTRY);
+        byte[] chunk = new byte[(int) Math.min(originalSize, 1 << 16)];
+        for (ByteBuffer window : windows) {
+            while (window.hasRemaining()) {
+                int length = Math.min(chunk.length, window.remaining());
+                window.get(chunk, 0, length);
+                dataOutputStream.write(chunk, 0, length);
+            }
+        }
+    }
+
+    //对原始数据进行哈夫曼编码，并写入输出流，返回最后一个字节中有效位的数量
+    public static int compressBinaryData(InputStream inputStream, HashMap<Byte, String> huffmanCodes, ByteArrayOutputStream tempOutputStream) throws IOException {
+        return effectiveBits(new HuffmanEncoder(huffmanCodes).encode(inputStream, tempOutputStream));
+    }
+
+    //由编码的总位数得到最后一个字节中有效位的数量，恰好写满（或没有数据）时其 8 位均视为有效
+    private static int effectiveBits(long bitCount) {
+        int remainingBits = (int) (bitCount & 7);
+        return remainingBits == 0 ? 8 : remainingBits;
     }
 
 
     //考虑多种异常情况并加入交互
     public static void finalFolderCompression(String inputFilePath, String outputFilePath) {
+        finalFolderCompression(inputFilePath, outputFilePath, new CompressionOptions());
+    }
+
+    public static void finalFolderCompression(String inputFilePath, String outputFilePath, CompressionOptions options) {
         File inputFile = new File(inputFilePath);
         File outputFile = new File(outputFilePath);
 
@@ -164,7 +435,7 @@ public class FolderCompression {
                 // 覆盖文件的逻辑
                 if (outputFile.delete()) {
                     System.out.println("旧文件夹已删除，正在进行压缩");
-                    compressFolder(inputFilePath, outputFilePath);
+                    compressFolder(inputFilePath, outputFilePath, options);
                     System.out.println("压缩完毕！");
                 } else {
                     System.out.println("旧文件夹删除失败，操作已取消");
@@ -180,7 +451,7 @@ public class FolderCompression {
         } else {
             // 文件不存在时的操作
             System.out.println("执行压缩...");
-            compressFolder(inputFilePath, outputFilePath);
+            compressFolder(inputFilePath, outputFilePath, options);
         }
 
     }
@@ -1,9 +1,15 @@
 package allpackage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Scanner;
 import java.util.Stack;
 
@@ -23,15 +29,22 @@ public class FolderDecompression {
                 return;
             }
 
-            // 读取文件名
+            // 读取格式版本、码长限制和文件名
+            int formatVersion = readFormatVersion(dataInputStream);
+            int maxCodeLength = readCodeLengthLimit(dataInputStream, formatVersion);
             String originalFolderName = dataInputStream.readUTF();
+            HuffmanDictionary dictionary = readDictionary(dataInputStream, formatVersion, new File(inputFilePath));
 
             // 构建解压缩后的文件夹路径，放在压缩文件的同一目录下
             String outputFolderPath = Paths.get(new File(inputFilePath).getParent(), originalFolderName).toString();
             File outputFolder = new File(outputFolderPath);
 
-            // 解压缩文件夹
-            decompressFolderRecursive(dataInputStream, outputFolder);
+            // 解压缩文件夹；带中央目录的压缩文件按目录逐个映射条目的数据解码，不再依赖 available() 判断结尾
+            if (formatVersion >= HuffmanCompression.DIRECTORY_FORMAT_VERSION) {
+                decompressEntries(fileInputStream.getChannel(), CentralDirectory.read(inputFilePath), outputFolder, null, formatVersion, maxCodeLength, dictionary);
+            } else {
+                decompressFolderRecursive(dataInputStream, outputFolder, formatVersion, maxCodeLength);
+            }
 
             System.out.println("解压缩完成：" + outputFolderPath);
 
@@ -41,40 +54,223 @@ public class FolderDecompression {
         }
     }
 
-    private static void decompressFolderRecursive(DataInputStream dataInputStream, File outputFolder) throws IOException {
+    private static void decompressFolderRecursive(DataInputStream dataInputStream, File outputFolder, int formatVersion, int maxCodeLength) throws IOException {
 
         while (dataInputStream.available() > 0) {
             String type = dataInputStream.readUTF(); // 读取类型标识符
             String name = dataInputStream.readUTF(); // 读取文件名或文件夹名
-            File currentFile = new File(outputFolder, name);
+            File currentFile = resolveEntry(outputFolder, name);
 
             if (type.equals("F")) {
                 // 如果是文件夹
                 currentFile.mkdirs();
             } else if (type.equals("FI")) {
                 // 如果是文件
-                decompressFile(dataInputStream, currentFile);
+                decompressFile(dataInputStream, currentFile, formatVersion, maxCodeLength);
+            }
+        }
+    }
+
+    //文件夹名之后记录的字典编号，按编号找到字典；没有使用字典时返回 null
+    private static HuffmanDictionary readDictionary(DataInputStream dataInputStream, int formatVersion, File inputFile) throws IOException {
+        if (formatVersion < HuffmanCompression.DICTIONARY_FORMAT_VERSION) {
+            return null;
+        }
+        return HuffmanDictionary.find(dataInputStream.readInt(), inputFile);
+    }
+
+    //按中央目录解压条目，matchers 为 null 时解压全部条目，返回解压出的文件数
+    private static int decompressEntries(FileChannel channel, List<CentralDirectory.Entry> entries, File outputFolder, List<PathMatcher> matchers, int formatVersion, int maxCodeLength,
+                                         HuffmanDictionary dictionary) throws IOException {
+        int extracted = 0;
+        SolidSegment segment = null;
+        for (CentralDirectory.Entry entry : entries) {
+            if (matchers != null && !matches(entry.path, matchers)) {
+                continue;
+            }
+            File currentFile = resolveEntry(outputFolder, entry.path);
+            if (entry.isFolder()) {
+                currentFile.mkdirs();
+            } else if (entry.isSolid()) {
+                // 同一固实段中的文件在目录中连续（中间只可能夹着文件夹条目），段头只读取一次
+                if (segment == null || segment.offset != entry.segmentOffset) {
+                    segment = SolidSegment.read(channel, entry.segmentOffset, maxCodeLength, dictionary, segment);
+                }
+                decompressSolidFile(channel, entry, segment, currentFile);
+                extracted++;
+            } else {
+                decompressFile(MappedInput.map(channel, entry.dataOffset, entry.compressedSize, MappedInput.WINDOW_SIZE), currentFile, formatVersion, maxCodeLength, dictionary);
+                extracted++;
+            }
+        }
+        return extracted;
+    }
+
+    //直接在映射的条目数据上解码一个文件，超过 2 GB 的条目分成多个窗口
+    private static void decompressFile(List<ByteBuffer> entryData, File outputFile, int formatVersion, int maxCodeLength, HuffmanDictionary dictionary) throws IOException {
+        // 文件头位于第一个窗口的开头；64 位格式记录了原始大小，旧格式只有 int 压缩长度
+        DataInputStream dataInputStream = new DataInputStream(new ByteBufferInputStream(entryData.get(0)));
+        long originalSize = Long.MAX_VALUE;
+        long fileLength;
+        if (formatVersion >= HuffmanCompression.LARGE_ENTRY_FORMAT_VERSION) {
+            originalSize = dataInputStream.readLong();
+            fileLength = dataInputStream.readLong();
+        } else {
+            fileLength = dataInputStream.readInt();
+        }
+        int effectiveBitsLastByte = dataInputStream.readByte();
+        boolean stored = formatVersion >= HuffmanCompression.STORED_FORMAT_VERSION && effectiveBitsLastByte == FolderCompression.STORED_ENTRY;
+        boolean dictionaryEntry = formatVersion >= HuffmanCompression.DICTIONARY_FORMAT_VERSION && (effectiveBitsLastByte & FolderCompression.DICTIONARY_ENTRY) != 0;
+        if (dictionaryEntry) {
+            if (dictionary == null) {
+                throw new IOException("文件使用了字典，但压缩文件没有记录字典: " + outputFile.getName());
+            }
+            effectiveBitsLastByte &= ~FolderCompression.DICTIONARY_ENTRY;
+        }
+        HuffmanCompression.Node root = stored || dictionaryEntry ? null : readHuffmanTree(dataInputStream, formatVersion);
+
+        long available = 0;
+        for (ByteBuffer window : entryData) {
+            available += window.remaining();
+        }
+        if (fileLength > available || (stored && fileLength != originalSize)) {
+            throw new IOException("压缩数据不完整: " + outputFile.getName());
+        }
+
+        // 确保父目录存在
+        File parentDir = outputFile.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+
+        if (stored) {
+            copyStoredFile(entryData, fileLength, outputFile);
+            return;
+        }
+
+        // 最后一个字节只有高位的 effectiveBitsLastByte 位有效
+        long bitCount = fileLength == 0 ? 0 : (fileLength - 1) * 8 + effectiveBitsLastByte;
+        try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            HuffmanTableDecoder decoder = dictionaryEntry ? dictionary.decoder() : new HuffmanTableDecoder(root, maxCodeLength);
+            decoder.decode(entryData, bufferedOutputStream, bitCount, originalSize);
+        }
+    }
+
+    //固实段的段头：段类型和段中文件共用的解码表
+    private static class SolidSegment {
+        final long offset;
+        final boolean stored;
+        // 段中文件使用的解码器：字典的解码器或由段的码长表生成的解码器
+        final HuffmanTableDecoder decoder;
+        // 由码长表生成的解码器，留给之后的段重复使用
+        final HuffmanTableDecoder tableDecoder;
+
+        SolidSegment(long offset, boolean stored, HuffmanTableDecoder decoder, HuffmanTableDecoder tableDecoder) {
+            this.offset = offset;
+            this.stored = stored;
+            this.decoder = decoder;
+            this.tableDecoder = tableDecoder;
+        }
+
+        //读取位于 offset 的段头，尽量重复使用上一段的解码器
+        static SolidSegment read(FileChannel channel, long offset, int maxCodeLength, HuffmanDictionary dictionary, SolidSegment previous) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(1 + CanonicalHuffman.MAX_CODE_LENGTHS_SIZE);
+            readFully(channel, header, offset, false);
+            header.flip();
+            int type = header.get();
+            HuffmanTableDecoder tableDecoder = previous != null ? previous.tableDecoder : null;
+            if (type == BlockCodec.BLOCK_STORED) {
+                return new SolidSegment(offset, true, null, tableDecoder);
+            }
+            if (type == BlockCodec.BLOCK_DICTIONARY) {
+                if (dictionary == null) {
+                    throw new IOException("固实段使用了字典，但压缩文件没有记录字典");
+                }
+                return new SolidSegment(offset, false, dictionary.decoder(), tableDecoder);
+            }
+            if (type != BlockCodec.BLOCK_HUFFMAN) {
+                throw new IOException("未知的固实段类型: " + type);
             }
+            byte[] codeLengths = new byte[256];
+            CanonicalHuffman.readCodeLengths(header, codeLengths);
+            if (tableDecoder == null) {
+                tableDecoder = new HuffmanTableDecoder(codeLengths, maxCodeLength);
+            } else {
+                tableDecoder.setCodeLengths(codeLengths, maxCodeLength);
+            }
+            return new SolidSegment(offset, false, tableDecoder, tableDecoder);
         }
     }
 
-    private static void decompressFile(DataInputStream dataInputStream, File outputFile) throws IOException {
+    //从固实段中单独解码一个文件：编码从字节边界开始，按目录中记录的位置和长度读取即可
+    private static void decompressSolidFile(FileChannel channel, CentralDirectory.Entry entry, SolidSegment segment, File outputFile) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) entry.compressedSize);
+        readFully(channel, data, entry.dataOffset, true);
+        data.flip();
+
+        // 确保父目录存在
+        File parentDir = outputFile.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+
+        try (FileOutputStream fileOutputStream = new FileOutputStream(outputFile)) {
+            if (segment.stored) {
+                while (data.hasRemaining()) {
+                    fileOutputStream.getChannel().write(data);
+                }
+                return;
+            }
+            long decoded = segment.decoder.decode(data, fileOutputStream, entry.compressedSize * 8, entry.originalSize);
+            if (decoded != entry.originalSize) {
+                throw new IOException("压缩数据不完整: " + outputFile.getName());
+            }
+        }
+    }
+
+    //从 position 开始读满缓冲区；required 为 false 时允许在文件末尾提前结束
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, boolean required) throws IOException {
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead < 0) {
+                if (required) {
+                    throw new EOFException("压缩数据不完整");
+                }
+                return;
+            }
+            position += bytesRead;
+        }
+    }
+
+    //原样保存的文件条目直接从映射的内存写入输出文件
+    private static void copyStoredFile(List<ByteBuffer> entryData, long length, File outputFile) throws IOException {
+        try (FileChannel outputChannel = new FileOutputStream(outputFile).getChannel()) {
+            long remaining = length;
+            for (ByteBuffer window : entryData) {
+                ByteBuffer data = window.slice();
+                data.limit((int) Math.min(data.remaining(), remaining));
+                remaining -= data.remaining();
+                while (data.hasRemaining()) {
+                    outputChannel.write(data);
+                }
+            }
+        }
+    }
+
+    private static void decompressFile(DataInputStream dataInputStream, File outputFile, int formatVersion, int maxCodeLength) throws IOException {
         // 读取文件数据长度
         int fileLength = dataInputStream.readInt();
 
         // 读入最后一个字节中有效位
         int effectiveBitsLastByte = dataInputStream.readByte();
 
-        // 读取哈夫曼编码表
-        HashMap<Byte, String> huffmanCodes = readHuffmanCodesFromStream(dataInputStream);
+        // 读取编码表并重构哈夫曼树
+        HuffmanCompression.Node root = readHuffmanTree(dataInputStream, formatVersion);
 
         // 读取指定长度的哈夫曼编码后的二进制数据
         byte[] encodedData = new byte[fileLength];
         dataInputStream.readFully(encodedData);
 
-        // 重构哈夫曼树
-        HuffmanCompression.Node root = rebuildHuffmanTree(huffmanCodes);
-
         // 确保父目录存在
         File parentDir = outputFile.getParentFile();
         if (parentDir != null && !parentDir.exists()) {
@@ -83,32 +279,103 @@ public class FolderDecompression {
 
         // 解码并写入文件
         try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(outputFile))) {
-            decompressBinaryData(bufferedOutputStream, root, encodedData, effectiveBitsLastByte);
+            decompressBinaryData(bufferedOutputStream, root, encodedData, effectiveBitsLastByte, maxCodeLength);
         }
     }
 
-    public static void decompressBinaryData(BufferedOutputStream bufferedOutputStream, HuffmanCompression.Node root, byte[] encodedData, int effectiveBitsLastByte) throws IOException {
+    public static void decompressBinaryData(BufferedOutputStream bufferedOutputStream, HuffmanCompression.Node root, byte[] encodedData, int effectiveBitsLastByte, int maxCodeLength) throws IOException {
+        decompressBinaryData(bufferedOutputStream, root, ByteBuffer.wrap(encodedData), effectiveBitsLastByte, maxCodeLength);
+    }
+
+    //解码缓冲区中剩余的全部编码数据
+    public static void decompressBinaryData(BufferedOutputStream bufferedOutputStream, HuffmanCompression.Node root, ByteBuffer encodedData, int effectiveBitsLastByte, int maxCodeLength) throws IOException {
         if (root == null) {
             System.err.println("Warning: Huffman tree root is null. Cannot decompress data.");
             return;
         }
 
-        HuffmanCompression.Node current = root;
-        for (int i = 0; i < encodedData.length; i++) {
-            byte data = encodedData[i];
-            int bits = (i == encodedData.length - 1) ? effectiveBitsLastByte : 8;  // Use effectiveBitsLastByte for the last byte
+        // 最后一个字节只有高位的 effectiveBitsLastByte 位有效
+        int length = encodedData.remaining();
+        long bitCount = length == 0 ? 0 : (length - 1) * 8L + effectiveBitsLastByte;
+        HuffmanTableDecoder decoder = new HuffmanTableDecoder(root, maxCodeLength);
+        decoder.decode(encodedData, bufferedOutputStream, bitCount, Long.MAX_VALUE);
+    }
+
 
-            for (int bit = bits - 1; bit >= 0; bit--) {
-                HuffmanCompression.Node child = (data & (1 << bit)) == 0 ? current.left : current.right;
+    /*
+     * 只解压与给定路径或通配符（如 "docs/*.txt"）匹配的条目，匹配到文件夹时解压其中的所有内容。
+     * 带中央目录的压缩文件直接定位到匹配条目的数据，耗时只与这些条目的大小有关；
+     * 旧格式没有索引，只能顺序跳过不匹配的条目。返回解压出的文件数。
+     */
+    public static int extractEntries(String inputFilePath, String outputFolderPath, List<String> patterns) throws IOException {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        File outputFolder = new File(outputFolderPath);
+
+        try (FileInputStream fileInputStream = new FileInputStream(inputFilePath);
+             DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(fileInputStream))) {
+            if (!checkMagicNumber(dataInputStream)) {
+                throw new IOException("这不是我创建的文件夹压缩文件");
+            }
+            int formatVersion = readFormatVersion(dataInputStream);
+            int maxCodeLength = readCodeLengthLimit(dataInputStream, formatVersion);
+            dataInputStream.readUTF();
+            HuffmanDictionary dictionary = readDictionary(dataInputStream, formatVersion, new File(inputFilePath));
 
-                if (HuffmanCompression.isLeaf(child)) {
-                    bufferedOutputStream.write(child.data);
-                    current = root;
+            if (formatVersion < HuffmanCompression.DIRECTORY_FORMAT_VERSION) {
+                return extractEntriesSequentially(dataInputStream, outputFolder, matchers, formatVersion, maxCodeLength);
+            }
+
+            return decompressEntries(fileInputStream.getChannel(), CentralDirectory.read(inputFilePath), outputFolder, matchers, formatVersion, maxCodeLength, dictionary);
+        }
+    }
+
+    private static int extractEntriesSequentially(DataInputStream dataInputStream, File outputFolder, List<PathMatcher> matchers, int formatVersion, int maxCodeLength) throws IOException {
+        int extracted = 0;
+        while (dataInputStream.available() > 0) {
+            String type = dataInputStream.readUTF();
+            String name = dataInputStream.readUTF();
+            boolean selected = matches(name, matchers);
+            File currentFile = resolveEntry(outputFolder, name);
+
+            if (type.equals("F")) {
+                if (selected) {
+                    currentFile.mkdirs();
+                }
+            } else if (type.equals("FI")) {
+                if (selected) {
+                    decompressFile(dataInputStream, currentFile, formatVersion, maxCodeLength);
+                    extracted++;
                 } else {
-                    current = child;
+                    skipCompressedFileData(dataInputStream, formatVersion);
                 }
             }
         }
+        return extracted;
+    }
+
+    //把条目路径解析到输出文件夹之下；规范化后落在输出文件夹以外的路径（如 "../x" 或绝对路径）说明压缩文件已损坏或被篡改，拒绝解压
+    private static File resolveEntry(File outputFolder, String entryPath) throws IOException {
+        Path root = outputFolder.toPath().toAbsolutePath().normalize();
+        Path resolved = root.resolve(entryPath).normalize();
+        if (!resolved.startsWith(root)) {
+            throw new IOException("条目路径超出了输出文件夹: " + entryPath);
+        }
+        return resolved.toFile();
+    }
+
+    //条目本身或它所在的某个文件夹与任一模式匹配
+    private static boolean matches(String entryPath, List<PathMatcher> matchers) {
+        for (Path path = Paths.get(entryPath); path != null; path = path.getParent()) {
+            for (PathMatcher matcher : matchers) {
+                if (matcher.matches(path)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
 
@@ -121,7 +388,8 @@ public class FolderDecompression {
             byte[] magicNumber = new byte[FOLDER_MAGIC_NUMBER.length];
             dataInputStream.readFully(magicNumber);
 
-            // 读取并返回文件夹名
+            // 跳过格式版本和码长限制，读取并返回文件夹名
+            readCodeLengthLimit(dataInputStream, readFormatVersion(dataInputStream));
             return dataInputStream.readUTF();
         }
         catch (IOException e) {
@@ -196,17 +464,24 @@ public class FolderDecompression {
             System.out.print(readDecompressedFolderName(inputFilePath));
             System.out.print("\n");
 
-            // 读取并忽略主文件夹名称
+            // 读取格式版本，跳过码长限制并忽略主文件夹名称
+            int formatVersion = readFormatVersion(dataInputStream);
+            readCodeLengthLimit(dataInputStream, formatVersion);
             dataInputStream.readUTF();
 
             Stack<String> pathStack = new Stack<>();
-            printFolderStructure(dataInputStream, pathStack, 0);
+            if (formatVersion >= HuffmanCompression.DIRECTORY_FORMAT_VERSION) {
+                // 直接从文件尾部的中央目录列出条目，不需要扫描压缩数据
+                printFolderStructure(CentralDirectory.read(inputFilePath), pathStack);
+            } else {
+                printFolderStructure(dataInputStream, pathStack, 0, formatVersion);
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private static void printFolderStructure(DataInputStream dataInputStream, Stack<String> pathStack, int level) throws IOException {
+    private static void printFolderStructure(DataInputStream dataInputStream, Stack<String> pathStack, int level, int formatVersion) throws IOException {
         while (dataInputStream.available() > 0) {
             String type = dataInputStream.readUTF();
             String path = dataInputStream.readUTF();
@@ -217,10 +492,22 @@ public class FolderDecompression {
             if (type.equals("F")) {
                 printIndentedName(path, level);
                 pathStack.push(path);
-                printFolderStructure(dataInputStream, pathStack, level + 1);
+                printFolderStructure(dataInputStream, pathStack, level + 1, formatVersion);
             } else if (type.equals("FI")) {
                 printIndentedName(path, level);
-                skipCompressedFileData(dataInputStream);
+                skipCompressedFileData(dataInputStream, formatVersion);
+            }
+        }
+    }
+
+    private static void printFolderStructure(List<CentralDirectory.Entry> entries, Stack<String> pathStack) {
+        int level = 0;
+        for (CentralDirectory.Entry entry : entries) {
+            level = adjustLevel(pathStack, entry.path, level);
+            printIndentedName(entry.path, level);
+            if (entry.isFolder()) {
+                pathStack.push(entry.path);
+                level++;
             }
         }
     }
@@ -241,10 +528,14 @@ public class FolderDecompression {
         System.out.println("├── " + name);
     }
 
-    private static void skipCompressedFileData(DataInputStream dataInputStream) throws IOException {
+    private static void skipCompressedFileData(DataInputStream dataInputStream, int formatVersion) throws IOException {
         int fileLength = dataInputStream.readInt();
         dataInputStream.readByte(); // 跳过最后一个字节中有效位
-        skipHuffmanCodes(dataInputStream);
+        if (formatVersion >= HuffmanCompression.CANONICAL_FORMAT_VERSION) {
+            CanonicalHuffman.skipCodeLengths(dataInputStream);
+        } else {
+            skipHuffmanCodes(dataInputStream);
+        }
         dataInputStream.skipBytes(fileLength); // 跳过压缩数据
     }
 
@@ -0,0 +1,25 @@
+package allpackage;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+//通道适配：在 NIO 通道上使用 HuffmanOutputStream / HuffmanInputStream
+public class HuffmanChannels {
+
+    //返回一个压缩后写入 channel 的通道，关闭它时写出结束标记并关闭 channel
+    public static WritableByteChannel newCompressingChannel(WritableByteChannel channel) throws IOException {
+        return Channels.newChannel(new HuffmanOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    //按 options 压缩，见 HuffmanOutputStream
+    public static WritableByteChannel newCompressingChannel(WritableByteChannel channel, CompressionOptions options) throws IOException {
+        return Channels.newChannel(new HuffmanOutputStream(Channels.newOutputStream(channel), options));
+    }
+
+    //返回一个从 channel 读取并解压的通道
+    public static ReadableByteChannel newDecompressingChannel(ReadableByteChannel channel) throws IOException {
+        return Channels.newChannel(new HuffmanInputStream(Channels.newInputStream(channel)));
+    }
+}
@@ -0,0 +1,162 @@
+package allpackage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+ * 面向缓冲区的编解码上下文：在两个 ByteBuffer（可以是直接缓冲区或内存映射的文件）之间压缩和解压，
+ * 不经过堆上的中间数组。频率表、码长表、包归并工作数组以及编码器和解码器的表都保存在上下文中重复使用，
+ * 预热之后每次调用都不再分配内存。一个上下文同一时间只能被一个线程使用。
+ *
+ * 压缩结果与分块格式中的一个数据块相同：
+ *   int  原始长度
+ *   int  压缩长度（之后所有字节的数量）
+ *   byte 数据块类型
+ *   码长表
+ *   哈夫曼编码数据
+ * 哈夫曼编码不能缩小数据时按原样保存的数据块写出。输入为空时只写出两个为 0 的长度字段。
+ */
+public class HuffmanCodec {
+    // 两个长度字段和类型字节
+    private static final int HEADER_SIZE = 9;
+
+    private final int maxCodeLength;
+
+    private final long[] frequencies = new long[256];
+    private final int[][] counters = new int[4][256];
+    private final byte[] codeLengths = new byte[256];
+    private final CanonicalHuffman.Workspace workspace = new CanonicalHuffman.Workspace();
+    private final HuffmanEncoder encoder;
+    private final HuffmanTableDecoder decoder;
+
+    public HuffmanCodec() {
+        this(CanonicalHuffman.MAX_CODE_LENGTH);
+    }
+
+    public HuffmanCodec(int maxCodeLength) {
+        CanonicalHuffman.checkCodeLengthLimit(maxCodeLength);
+        this.maxCodeLength = maxCodeLength;
+        encoder = new HuffmanEncoder(codeLengths);
+        decoder = new HuffmanTableDecoder(codeLengths, maxCodeLength);
+    }
+
+    //压缩 sourceLength 个字节最多需要的输出空间：码长限制不小于 8 时编码数据不会超过原始长度
+    public static int maxCompressedLength(int sourceLength) {
+        long bound = (long) sourceLength + HEADER_SIZE + CanonicalHuffman.MAX_CODE_LENGTHS_SIZE;
+        if (sourceLength < 0 || bound > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("输入长度超出范围: " + sourceLength);
+        }
+        return (int) bound;
+    }
+
+    //读取 source 当前位置的压缩数据解压后的长度，不改变缓冲区的位置
+    public static int decompressedLength(ByteBuffer source) {
+        int length = source.getInt(source.position());
+        return source.order() == ByteOrder.BIG_ENDIAN ? length : Integer.reverseBytes(length);
+    }
+
+    //压缩 source 中剩余的全部字节，写入 destination 的当前位置；destination 至少要有 maxCompressedLength 的剩余空间。返回写入的字节数
+    public int compress(ByteBuffer source, ByteBuffer destination) throws IOException {
+        int length = source.remaining();
+        if (destination.remaining() < maxCompressedLength(length)) {
+            throw new IllegalArgumentException("输出缓冲区空间不足，至少需要 " + maxCompressedLength(length) + " 字节");
+        }
+
+        // 编码器按大端顺序整字写出，临时调整调用方缓冲区的字节序
+        ByteOrder order = destination.order();
+        destination.order(ByteOrder.BIG_ENDIAN);
+        try {
+            int start = destination.position();
+            destination.putInt(length);
+            if (length == 0) {
+                destination.putInt(0);
+                return HEADER_SIZE - 1;
+            }
+
+            Arrays.fill(frequencies, 0);
+            ByteHistogram.count(source, frequencies, counters);
+            CanonicalHuffman.codeLengths(frequencies, maxCodeLength, codeLengths, workspace);
+            long payloadBytes = (HuffmanEncoder.encodedBits(frequencies, codeLengths) + 7) >>> 3;
+            if (BlockCodec.isIncompressible(length, payloadBytes, codeLengths)) {
+                destination.putInt(length + 1);
+                destination.put((byte) BlockCodec.BLOCK_STORED);
+                destination.put(source);
+                return destination.position() - start;
+            }
+
+            destination.putInt(0); // 压缩长度稍后回填
+            destination.put((byte) BlockCodec.BLOCK_HUFFMAN);
+            CanonicalHuffman.writeCodeLengths(codeLengths, destination);
+
+            encoder.setCodeLengths(codeLengths);
+            encoder.start(destination);
+            encoder.write(source);
+            encoder.finish();
+
+            int written = destination.position() - start;
+            destination.putInt(start + 4, written - 8);
+            return written;
+        } finally {
+            destination.order(order);
+        }
+    }
+
+    //解压 source 当前位置的一段压缩数据，写入 destination 的当前位置，返回解压出的字节数；两个缓冲区的位置都移到各自数据的末尾
+    public int decompress(ByteBuffer source, ByteBuffer destination) throws IOException {
+        ByteOrder order = source.order();
+        source.order(ByteOrder.BIG_ENDIAN);
+        int start = source.position();
+        int limit = source.limit();
+        try {
+            if (source.remaining() < HEADER_SIZE - 1) {
+                throw new IOException("压缩数据不完整");
+            }
+            int originalLength = source.getInt();
+            int compressedLength = source.getInt();
+            if (originalLength < 0 || compressedLength < 0 || compressedLength > source.remaining()) {
+                throw new IOException("数据块已损坏");
+            }
+            if (originalLength > destination.remaining()) {
+                throw new IllegalArgumentException("输出缓冲区空间不足，至少需要 " + originalLength + " 字节");
+            }
+            if (originalLength == 0) {
+                return 0;
+            }
+
+            // 只在这个数据块的范围内解析
+            int end = source.position() + compressedLength;
+            source.limit(end);
+            int blockType = source.hasRemaining() ? source.get() & 0xFF : -1;
+            if (blockType == BlockCodec.BLOCK_STORED) {
+                if (source.remaining() != originalLength) {
+                    throw new IOException("数据块已损坏");
+                }
+                destination.put(source);
+                source.limit(limit);
+                return originalLength;
+            }
+            if (blockType != BlockCodec.BLOCK_HUFFMAN) {
+                throw new IOException("未知的数据块类型: " + blockType);
+            }
+            CanonicalHuffman.readCodeLengths(source, codeLengths);
+            decoder.setCodeLengths(codeLengths, maxCodeLength);
+
+            long decoded = decoder.decode(source, destination, source.remaining() * 8L, originalLength);
+            if (decoded != originalLength) {
+                throw new IOException("数据块已损坏");
+            }
+            source.limit(limit);
+            source.position(end);
+            return originalLength;
+        } catch (IOException | RuntimeException e) {
+            // 解压失败时输入缓冲区回到原来的位置
+            source.limit(limit);
+            source.position(start);
+            throw e;
+        } finally {
+            source.order(order);
+        }
+    }
+}
@@ -1,20 +1,65 @@
 package allpackage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class HuffmanCompression {
     // 魔术数字用于单个文件
     public static final byte[] FILE_MAGIC_NUMBER = {0x48, 0x46, 0x49, 0x4C, 0x45}; // "HFILE"
     // 魔术数字用于文件夹
     public static final byte[] FOLDER_MAGIC_NUMBER = {0x48, 0x46, 0x4F, 0x4C, 0x44}; // "HFOLD"
+    // 魔术数字用于长度未知的数据流
+    public static final byte[] STREAM_MAGIC_NUMBER = {0x48, 0x53, 0x54, 0x52, 0x4D}; // "HSTRM"
+    // 格式版本标记，紧跟在 magic number 之后；旧格式在这个位置是名称长度的高字节，不会是 0xFF
+    public static final int FORMAT_MARKER = 0xFF;
+    // 旧格式：编码表逐位保存编码字符串
+    public static final int LEGACY_FORMAT_VERSION = 1;
+    // 范式哈夫曼格式：编码表只保存码长
+    public static final int CANONICAL_FORMAT_VERSION = 2;
+    // 限长编码格式：版本号之后记录压缩时采用的码长限制
+    public static final int LIMITED_FORMAT_VERSION = 3;
+    // 单文件在文件名之后记录原始长度，解码时不会把末尾的填充位当成数据
+    public static final int SIZED_FORMAT_VERSION = 4;
+    // 分块格式：单文件在原始长度之后记录数据块大小，数据由互相独立的数据块组成
+    public static final int BLOCK_FORMAT_VERSION = 5;
+    // 文件夹压缩文件以中央目录和固定长度的结尾记录结束
+    public static final int DIRECTORY_FORMAT_VERSION = 6;
+    // 文件夹中的文件条目使用 64 位的原始大小和压缩长度
+    public static final int LARGE_ENTRY_FORMAT_VERSION = 7;
+    // 哈夫曼编码不能缩小的数据块和文件条目直接保存原始字节
+    public static final int STORED_FORMAT_VERSION = 8;
+    // 文件夹可以使用固实模式：小文件合并成共用码长表的固实段，中央目录记录每个文件在段中的位置
+    public static final int SOLID_FORMAT_VERSION = 9;
+    // 文件头记录所用字典的编号，数据块、文件条目和固实段可以按训练好的字典编码
+    public static final int DICTIONARY_FORMAT_VERSION = 10;
+    // 单文件头记录编码模式，数据块可以使用一阶上下文编码
+    public static final int CONTEXT_FORMAT_VERSION = 11;
+    // 数据块可以先经过 LZ77 匹配，再对字面字节、长度和距离分路做哈夫曼编码
+    public static final int LZ77_FORMAT_VERSION = 12;
+    // 零阶数据块可以分成几路交错的位流
+    public static final int INTERLEAVED_FORMAT_VERSION = 13;
+    // 数据块可以使用字节对字母表
+    public static final int PAIR_FORMAT_VERSION = 14;
+    public static final int FORMAT_VERSION = PAIR_FORMAT_VERSION;
+
+    // 单文件的编码模式：零阶（每个数据块一张码表），可以叠加一阶上下文（按前一个字节选择码表）、LZ77、交错位流和字节对几个标志
+    public static final int ORDER0_MODE = 0;
+    public static final int CONTEXT_MODE = 1;
+    public static final int LZ77_MODE = 2;
+    public static final int INTERLEAVED_MODE = 4;
+    public static final int PAIR_MODE = 8;
     //定义哈夫曼树的Node结点
     static class Node implements Comparable<Node> {
         Byte data;
-        int frequency;
+        long frequency;
         Node left, right;
 
-        public Node(Byte data, int frequency) {
+        public Node(Byte data, long frequency) {
             this.data = data;
             this.frequency = frequency;
             left = null;
@@ -23,29 +68,36 @@ public class HuffmanCompression {
 
         @Override
         public int compareTo(Node o) {
-            return this.frequency - o.frequency;
+            return Long.compare(this.frequency, o.frequency);
         }
     }
 
-        //根据每个文件构造相应的哈夫曼树
+        //根据每个文件构造相应的哈夫曼树，字节频率直接统计到 long[256] 中
         public static Node buildHuffmanTree(byte[] fileData) {
-            HashMap<Byte, Integer> frequencyMap = new HashMap<>();
+            return buildHuffmanTree(ByteHistogram.count(fileData, 0, fileData.length));
+        }
+
+        //根据已统计好的字节频率构造哈夫曼树
+        public static Node buildHuffmanTree(long[] frequencies) {
+            PriorityQueue<Node> priorityQueue = newNodeQueue();
 
-            // 统计每个字节的频率
-            for (byte b : fileData) {
-                frequencyMap.put(b, frequencyMap.getOrDefault(b, 0) + 1);
+            for (int i = 0; i < frequencies.length; i++) {
+                if (frequencies[i] > 0) {
+                    priorityQueue.add(new Node((byte) i, frequencies[i]));
+                }
             }
 
-            PriorityQueue<Node> priorityQueue = new PriorityQueue<>(Comparator
-                    .<Node, Integer>comparing(node -> node.frequency)
+            return mergeNodes(priorityQueue);
+        }
+
+        private static PriorityQueue<Node> newNodeQueue() {
+            return new PriorityQueue<>(Comparator
+                    .<Node, Long>comparing(node -> node.frequency)
                     .thenComparing(node -> (int) node.data)
             );
+        }
 
-            // 创建节点并添加到优先队列中
-            for (byte key : frequencyMap.keySet()) {
-                priorityQueue.add(new Node(key, frequencyMap.get(key)));
-            }
-
+        private static Node mergeNodes(PriorityQueue<Node> priorityQueue) {
             // 构建哈夫曼树
             while (priorityQueue.size() > 1) {
                 Node left = priorityQueue.poll();
@@ -88,7 +140,15 @@ public class HuffmanCompression {
     }
 
 
-    //将哈夫曼编码表写入压缩文件，以便于解压缩
+    //在 magic number 之后写入格式版本和码长限制
+    public static void writeFormatVersion(DataOutputStream dataOutputStream, int maxCodeLength) throws IOException {
+        dataOutputStream.writeByte(FORMAT_MARKER);
+        dataOutputStream.writeByte(FORMAT_VERSION);
+        dataOutputStream.writeByte(maxCodeLength);
+    }
+
+
+    //将哈夫曼编码表写入压缩文件，以便于解压缩（旧格式）
     public static void writeHuffmanCodesToStream(Map<Byte, String> huffmanCodes, DataOutputStream dataOutputStream) {
         try {
             dataOutputStream.writeInt(huffmanCodes.size()); // 写入哈夫曼编码表的大小
@@ -108,34 +168,32 @@ public class HuffmanCompression {
 
     // 对原始数据进行哈夫曼编码，并写入输出流
     public static void compressBinaryData(InputStream inputStream, HashMap<Byte, String> huffmanCodes, OutputStream outputStream) throws IOException {
-        byte[] buffer = new byte[1024]; // 缓冲区大小可以调整
-        int bytesRead;
+        new HuffmanEncoder(huffmanCodes).encode(inputStream, outputStream);
+    }
 
-        int bitCount = 0;
-        int outputByte = 0;
 
-        // 逐块读取数据并应用哈夫曼编码
+    //流式统计输入流中每个字节的频率，内存占用与输入大小无关
+    public static long[] countByteFrequencies(InputStream inputStream) throws IOException {
+        long[] frequencies = new long[256];
+        byte[] buffer = new byte[1 << 16];
+        int bytesRead;
+
         while ((bytesRead = inputStream.read(buffer)) != -1) {
-            for (int i = 0; i < bytesRead; i++) {
-                String code = huffmanCodes.get(buffer[i]);
-                for (char bit : code.toCharArray()) {
-                    outputByte = (outputByte << 1) | (bit == '1' ? 1 : 0);
-                    bitCount++;
-
-                    // 当累积到8位，写入输出流
-                    if (bitCount == 8) {
-                        outputStream.write(outputByte);
-                        bitCount = 0;
-                        outputByte = 0;
-                    }
-                }
-            }
-        }
-        // 如果最后不足8位，需要填充并写入剩余的位
-        if (bitCount > 0) {
-            outputByte <<= (8 - bitCount); // 左移以填充剩余的位
-            outputStream.write(outputByte);
+            ByteHistogram.count(ByteBuffer.wrap(buffer, 0, bytesRead), frequencies);
         }
+        return frequencies;
+    }
+
+
+    //统计字节数组中一段数据的字节频率
+    public static long[] countByteFrequencies(byte[] data, int offset, int length) {
+        return ByteHistogram.count(data, offset, length);
+    }
+
+
+    //把缓冲区中 position 到 limit 之间字节的频率累加到 frequencies，不改变缓冲区的位置
+    public static void countByteFrequencies(ByteBuffer data, long[] frequencies) {
+        ByteHistogram.count(data, frequencies);
     }
 
 
@@ -154,38 +212,51 @@ public class HuffmanCompression {
 
     //压缩文件
     public static void compressFile(String inputFilePath, String outputFilePath) {
+        compressFile(inputFilePath, outputFilePath, new CompressionOptions());
+    }
+
+    //按 options 压缩文件：输入文件映射到内存，数据块在公共线程池中并行编码；文件头记录码长限制、字典和用到的编码模式
+    public static void compressFile(String inputFilePath, String outputFilePath, CompressionOptions options) {
+        int maxCodeLength = options.maxCodeLength();
+        int blockSize = options.blockSize();
+        HuffmanDictionary dictionary = options.dictionary();
         try {
-            FileInputStream fileInputStream = new FileInputStream(inputFilePath);
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream);
             FileOutputStream fileOutputStream = new FileOutputStream(outputFilePath);
             BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream);
             DataOutputStream dataOutputStream = new DataOutputStream(bufferedOutputStream);
 
 
-            // 写入 magic number
+            // 写入 magic number 和格式版本
             dataOutputStream.write(FILE_MAGIC_NUMBER);
+            writeFormatVersion(dataOutputStream, maxCodeLength);
 
             // 写入文件名
             dataOutputStream.writeUTF(new File(inputFilePath).getName());
 
-            // 构建哈夫曼树
-            bufferedInputStream.mark(Integer.MAX_VALUE);
-            Node root = buildHuffmanTree(convertInputStreamToByteArray(bufferedInputStream));
-
-            // 生成哈夫曼编码表
-            HashMap<Byte, String> huffmanCodes = generateHuffmanCodes(root);
-
-            // 将哈夫曼编码表写入压缩文件
-            writeHuffmanCodesToStream(huffmanCodes, dataOutputStream);
-
-            // 重置输入流
-            bufferedInputStream.reset();
-
-            // 将哈夫曼编码后的数据写入压缩文件
-            compressBinaryData(bufferedInputStream, huffmanCodes, bufferedOutputStream);
+            try (FileChannel inputChannel = FileChannel.open(Paths.get(inputFilePath), StandardOpenOption.READ)) {
+                // 写入原始长度和数据块大小
+                long originalLength = inputChannel.size();
+                dataOutputStream.writeLong(originalLength);
+                dataOutputStream.writeInt(blockSize);
+                dataOutputStream.writeInt(dictionary != null ? dictionary.id : HuffmanDictionary.NO_DICTIONARY);
+                dataOutputStream.writeByte((options.contextModel() ? CONTEXT_MODE : ORDER0_MODE) | (options.lz() != null ? LZ77_MODE : ORDER0_MODE)
+                        | (options.interleaved() ? INTERLEAVED_MODE : ORDER0_MODE) | (options.pairs() ? PAIR_MODE : ORDER0_MODE));
+
+                // 映射窗口的大小取数据块大小的整数倍，保证数据块不会跨越两个窗口
+                int windowSize = MappedInput.WINDOW_SIZE / blockSize * blockSize;
+                List<ByteBuffer> windows = MappedInput.map(inputChannel, 0, originalLength, windowSize);
+
+                // 整个文件只抽样估计一次：明显不能压缩、也没有打开需要逐块尝试的编码方式时，数据块全部原样保存，省去频率统计和编码
+                if (originalLength > EntropyEstimator.MAX_SAMPLE_SIZE && !options.contextModel() && !options.pairs() && options.lz() == null
+                        && EntropyEstimator.estimate(windows).isIncompressible()) {
+                    BlockCodec.storeBlocks(windows, dataOutputStream, blockSize);
+                } else {
+                    // 分块并行编码，按顺序写入压缩文件
+                    BlockCodec.compressBlocks(windows, dataOutputStream, ForkJoinPool.commonPool(), options);
+                }
+            }
 
             // 关闭流
-            bufferedInputStream.close();
             dataOutputStream.close();
         } catch (IOException e) {
             e.printStackTrace();
@@ -195,6 +266,10 @@ public class HuffmanCompression {
 
     //考虑多种异常情况并加入交互
     public static void finalHuffmanCompression(String inputFilePath, String outputFilePath) {
+        finalHuffmanCompression(inputFilePath, outputFilePath, new CompressionOptions());
+    }
+
+    public static void finalHuffmanCompression(String inputFilePath, String outputFilePath, CompressionOptions options) {
         File inputFile = new File(inputFilePath);
         File outputFile = new File(outputFilePath);
 
@@ -215,7 +290,7 @@ public class HuffmanCompression {
                 // 覆盖文件的逻辑
                 if (outputFile.delete()) {
                     System.out.println("旧文件已删除，正在进行压缩");
-                    compressFile(inputFilePath, outputFilePath);
+                    compressFile(inputFilePath, outputFilePath, options);
                     System.out.println("压缩完毕！");
                 } else {
                     System.out.println("旧文件删除失败，操作已取消");
@@ -231,7 +306,7 @@ public class HuffmanCompression {
         } else {
             // 文件不存在时的操作
             System.out.println("执行压缩...");
-            compressFile(inputFilePath, outputFilePath);
+            compressFile(inputFilePath, outputFilePath, options);
         }
     }
 
@@ -1,7 +1,9 @@
 package allpackage;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -65,35 +67,76 @@ public class HuffmanDecompression {
     }
 
 
-    //通过哈夫曼树对二进制数据进行解压缩
-    public static void decompressBinaryData(BufferedOutputStream bufferedOutputStream, Node root, byte[] encodedData) throws IOException {
+    //读取 magic number 之后的格式版本，旧格式没有版本标记
+    public static int readFormatVersion(DataInputStream dataInputStream) throws IOException {
+        dataInputStream.mark(2);
+        if (dataInputStream.readUnsignedByte() == HuffmanCompression.FORMAT_MARKER) {
+            int version = dataInputStream.readUnsignedByte();
+            if (version > HuffmanCompression.FORMAT_VERSION) {
+                throw new IOException("不支持的压缩格式版本: " + version);
+            }
+            return version;
+        }
+        dataInputStream.reset();
+        return HuffmanCompression.LEGACY_FORMAT_VERSION;
+    }
+
+    //读取压缩时采用的码长限制，旧格式没有记录时取默认上限
+    public static int readCodeLengthLimit(DataInputStream dataInputStream, int formatVersion) throws IOException {
+        if (formatVersion >= HuffmanCompression.LIMITED_FORMAT_VERSION) {
+            return dataInputStream.readUnsignedByte();
+        }
+        return CanonicalHuffman.MAX_CODE_LENGTH;
+    }
+
+    //按格式版本读取编码表并重建哈夫曼树
+    public static Node readHuffmanTree(DataInputStream dataInputStream, int formatVersion) throws IOException {
+        if (formatVersion >= HuffmanCompression.CANONICAL_FORMAT_VERSION) {
+            return CanonicalHuffman.rebuildHuffmanTree(CanonicalHuffman.readCodeLengths(dataInputStream));
+        }
+        return rebuildHuffmanTree(readHuffmanCodesFromStream(dataInputStream));
+    }
+
+
+    //通过查找表直接从输入流解码，最多输出 originalLength 个字节（为负时解码到输入结束）
+    public static void decompressBinaryData(BufferedOutputStream bufferedOutputStream, Node root, InputStream encodedData, long originalLength, int maxCodeLength) throws IOException {
         if (root == null) {
             System.err.println("Warning: Huffman tree root is null. Cannot decompress data.");
             return;
         }
-            Node current = root;
-            for (byte data : encodedData) {
-                for (int bit = 7; bit >= 0; bit--) {
-                    Node child = (data & (1 << bit)) == 0 ? current.left : current.right;
-
-                    if (isLeaf(child)) {
-                        bufferedOutputStream.write(child.data);
-                        current = root;
-                    } else {
-                        current = child;
-                    }
-                }
-            }
+        HuffmanTableDecoder decoder = new HuffmanTableDecoder(root, maxCodeLength);
+        decoder.decode(encodedData, bufferedOutputStream, Long.MAX_VALUE, originalLength < 0 ? Long.MAX_VALUE : originalLength);
+    }
 
+
+    //逐位遍历哈夫曼树的参考实现，只用于测试时校验查表解码器的输出（见 test/allpackage/TableDecoderCheck）
+    public static void referenceDecompressBinaryData(OutputStream outputStream, Node root, byte[] encodedData, long bitCount) throws IOException {
+        Node current = root;
+        for (long i = 0; i < bitCount; i++) {
+            int data = encodedData[(int) (i >>> 3)];
+            Node child = (data & (0x80 >>> (i & 7))) == 0 ? current.left : current.right;
+
+            if (isLeaf(child)) {
+                outputStream.write(child.data);
+                current = root;
+            } else {
+                current = child;
+            }
+        }
     }
 
 
     //解压缩
     public static void decompressFile(String inputFilePath) {
+        decompressFile(inputFilePath, Runtime.getRuntime().availableProcessors());
+    }
+
+    //使用 threadCount 个线程解压缩，分块格式的数据块并行解码
+    public static void decompressFile(String inputFilePath, int threadCount) {
         try {
             FileInputStream fileInputStream = new FileInputStream(inputFilePath);
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream);
-            DataInputStream dataInputStream = new DataInputStream(bufferedInputStream);
+            CountingInputStream countingInputStream = new CountingInputStream(new BufferedInputStream(fileInputStream));
+            DataInputStream dataInputStream = new DataInputStream(countingInputStream);
 
             // 读取 Magic Number
             if (!checkMagicNumber(dataInputStream)) {
@@ -101,31 +144,42 @@ public class HuffmanDecompression {
                 return;
             }
 
-            // 读取文件名
+            // 读取格式版本、码长限制和文件名
+            int formatVersion = readFormatVersion(dataInputStream);
+            int maxCodeLength = readCodeLengthLimit(dataInputStream, formatVersion);
             String originalFileName = dataInputStream.readUTF();
 
             // 构建解压缩后的输出路径，放在压缩文件的同一目录下
             String outputDirectory = new File(inputFilePath).getParent();
             String outputFilePath = Paths.get(outputDirectory, originalFileName).toString();
 
-            // 读取哈夫曼编码表
-            HashMap<Byte, String> huffmanCodes = readHuffmanCodesFromStream(dataInputStream);
-
-            // 读取哈夫曼编码后的二进制数据
-            ByteArrayOutputStream encodedDataBuffer = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = dataInputStream.read(buffer)) != -1) {
-                encodedDataBuffer.write(buffer, 0, bytesRead);
-            }
-            byte[] encodedData = encodedDataBuffer.toByteArray();
+            // 读取原始长度（旧格式没有记录）
+            long originalLength = formatVersion >= HuffmanCompression.SIZED_FORMAT_VERSION ? dataInputStream.readLong() : -1;
 
-            // 重构哈夫曼树
-            Node root = rebuildHuffmanTree(huffmanCodes);
-
-            // 解码并写入文件
-            try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(outputFilePath))) {
-                decompressBinaryData(bufferedOutputStream, root, encodedData);
+            if (formatVersion >= HuffmanCompression.BLOCK_FORMAT_VERSION) {
+                // 分块格式：跳过数据块大小，按编号找到所用的字典，各数据块并行解码后按偏移写入输出文件
+                dataInputStream.readInt();
+                HuffmanDictionary dictionary = null;
+                if (formatVersion >= HuffmanCompression.DICTIONARY_FORMAT_VERSION) {
+                    dictionary = HuffmanDictionary.find(dataInputStream.readInt(), new File(inputFilePath));
+                }
+                // 编码模式记录压缩时的选择，解码时每个数据块的类型已经说明了它的编码方式
+                if (formatVersion >= HuffmanCompression.CONTEXT_FORMAT_VERSION
+                        && (dataInputStream.readUnsignedByte() & ~(HuffmanCompression.CONTEXT_MODE | HuffmanCompression.LZ77_MODE | HuffmanCompression.INTERLEAVED_MODE
+                        | HuffmanCompression.PAIR_MODE)) != 0) {
+                    throw new IOException("不支持的编码模式");
+                }
+                long dataPosition = countingInputStream.getCount();
+                try (FileChannel inputChannel = FileChannel.open(Paths.get(inputFilePath), StandardOpenOption.READ);
+                     FileChannel outputChannel = FileChannel.open(Paths.get(outputFilePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    BlockCodec.decompressBlocksParallel(inputChannel, dataPosition, originalLength, outputChannel, maxCodeLength, threadCount, dictionary);
+                }
+            } else {
+                // 读取编码表并重构哈夫曼树，边读边解码并写入文件
+                Node root = readHuffmanTree(dataInputStream, formatVersion);
+                try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(outputFilePath))) {
+                    decompressBinaryData(bufferedOutputStream, root, dataInputStream, originalLength, maxCodeLength);
+                }
             }
 
             System.out.println("解压缩完成：" + outputFilePath);
@@ -139,6 +193,10 @@ public class HuffmanDecompression {
 
     //考虑多种异常情况并加入交互
     public static void finalHuffmanDecompression(String inputFilePath) {
+        finalHuffmanDecompression(inputFilePath, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static void finalHuffmanDecompression(String inputFilePath, int threadCount) {
         File inputFile = new File(inputFilePath);
 
         // 从压缩文件中获取原始文件名
@@ -165,14 +223,14 @@ public class HuffmanDecompression {
 
         System.out.println("正在进行解压缩...");
 
-        decompressFile(inputFilePath); // 假设这个方法处理了解压缩逻辑
+        decompressFile(inputFilePath, threadCount); // 假设这个方法处理了解压缩逻辑
         System.out.println("解压缩完毕！");
     }
 
 
     //获取原文件名以判断是否输出目录下有同名文件
     private static String getOriginalFileName(String compressedFilePath) throws IOException {
-        try (DataInputStream dataInputStream = new DataInputStream(new FileInputStream(compressedFilePath))) {
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(compressedFilePath)))) {
             // 跳过 magic number
             byte[] magicNumber = new byte[FILE_MAGIC_NUMBER.length];
             dataInputStream.readFully(magicNumber);
@@ -182,7 +240,8 @@ public class HuffmanDecompression {
                 throw new IOException("这不是我创建的文件，无法解压!");
             }
 
-            // 读取并返回原始文件名
+            // 跳过格式版本和码长限制，读取并返回原始文件名
+            readCodeLengthLimit(dataInputStream, readFormatVersion(dataInputStream));
             return dataInputStream.readUTF();
         }
     }
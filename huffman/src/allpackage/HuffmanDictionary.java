@@ -0,0 +1,226 @@
+package allpackage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/*
+ * 训练得到的静态码长表（字典）：统计一批相似样本（例如同一类日志或 JSON 文件）的字节频率，
+ * 生成一张覆盖全部 256 个字节的码长表，保存为带编号的字典文件。
+ * 压缩时数据块、文件条目和固实段可以只引用字典编号，省去逐个文件建树和保存码长表；
+ * 解压时按编号找到字典文件，加载一次后缓存，编码器和解码表在每个线程中重复使用。
+ */
+public class HuffmanDictionary {
+    public static final byte[] MAGIC_NUMBER = {0x48, 0x44, 0x49, 0x43, 0x54}; // "HDICT"
+    public static final String FILE_EXTENSION = ".hdict";
+    // 除压缩文件所在的文件夹外，还在这些文件夹中查找字典文件，多个文件夹用路径分隔符隔开
+    public static final String PATH_PROPERTY = "huffman.dictionary.path";
+    // 压缩文件头中表示没有使用字典的编号
+    public static final int NO_DICTIONARY = 0;
+
+    // 已加载的字典，按编号缓存
+    private static final Map<Integer, HuffmanDictionary> CACHE = new ConcurrentHashMap<>();
+
+    /*
+     * 字典文件布局：
+     *   "HDICT"
+     *   int  字典编号（码长限制和码长表的 CRC32）
+     *   byte 码长限制
+     *   long 训练样本的字节数
+     *   码长表
+     */
+
+    public final int id;
+    public final int maxCodeLength;
+    public final long sampleBytes;
+    private final byte[] codeLengths;
+    private final ThreadLocal<HuffmanEncoder> encoders;
+    private final ThreadLocal<HuffmanTableDecoder> decoders;
+
+    private HuffmanDictionary(byte[] codeLengths, int maxCodeLength, long sampleBytes) {
+        this.id = computeId(codeLengths, maxCodeLength);
+        this.maxCodeLength = maxCodeLength;
+        this.sampleBytes = sampleBytes;
+        this.codeLengths = codeLengths;
+        this.encoders = ThreadLocal.withInitial(() -> new HuffmanEncoder(codeLengths));
+        this.decoders = ThreadLocal.withInitial(() -> new HuffmanTableDecoder(codeLengths, maxCodeLength));
+    }
+
+    private static int computeId(byte[] codeLengths, int maxCodeLength) {
+        CRC32 crc = new CRC32();
+        crc.update(maxCodeLength);
+        crc.update(codeLengths);
+        int id = (int) crc.getValue();
+        return id == NO_DICTIONARY ? 1 : id;
+    }
+
+    //以十六进制显示的字典编号
+    public String idString() {
+        return String.format("%08x", id);
+    }
+
+    public byte[] getCodeLengths() {
+        return codeLengths.clone();
+    }
+
+    //当前线程使用的编码器，每段数据开始前需要调用 start
+    public HuffmanEncoder encoder() {
+        return encoders.get();
+    }
+
+    //当前线程使用的解码器
+    public HuffmanTableDecoder decoder() {
+        return decoders.get();
+    }
+
+    //检查字典能否用于文件头记录的码长限制为 maxCodeLength 的压缩文件：按字典编码的数据也不能超过这个限制
+    public void checkCodeLengthLimit(int maxCodeLength) {
+        if (this.maxCodeLength > maxCodeLength) {
+            throw new IllegalArgumentException("字典的码长限制为 " + this.maxCodeLength + "，超过了压缩文件的码长限制 " + maxCodeLength
+                    + "，请用不超过 " + maxCodeLength + " 的码长限制训练字典");
+        }
+    }
+
+    //按字典的码长表编码这些字节需要的位数
+    public long encodedBits(long[] frequencies) {
+        return HuffmanEncoder.encodedBits(frequencies, codeLengths);
+    }
+
+
+    //从样本文件或文件夹（递归包含其中的所有文件）训练字典
+    public static HuffmanDictionary train(String samplePath, int maxCodeLength) throws IOException {
+        List<File> samples = new ArrayList<>();
+        collectSamples(new File(samplePath), samples);
+        return train(samples, maxCodeLength);
+    }
+
+    public static HuffmanDictionary train(List<File> samples, int maxCodeLength) throws IOException {
+        CanonicalHuffman.checkCodeLengthLimit(maxCodeLength);
+        long[] frequencies = new long[256];
+        long sampleBytes = 0;
+        for (File sample : samples) {
+            try (FileInputStream fileInputStream = new FileInputStream(sample)) {
+                for (ByteBuffer window : MappedInput.map(fileInputStream.getChannel())) {
+                    sampleBytes += window.remaining();
+                    ByteHistogram.count(window, frequencies);
+                }
+            }
+        }
+        return fromFrequencies(frequencies, maxCodeLength, sampleBytes);
+    }
+
+    //由字节频率生成字典；样本中没有出现的字节也分配一个（较长的）编码，保证任何数据都能用字典编码
+    public static HuffmanDictionary fromFrequencies(long[] frequencies, int maxCodeLength, long sampleBytes) {
+        long[] smoothed = new long[256];
+        for (int i = 0; i < 256; i++) {
+            smoothed[i] = frequencies[i] + 1;
+        }
+        byte[] codeLengths = new byte[256];
+        CanonicalHuffman.codeLengths(smoothed, maxCodeLength, codeLengths, new CanonicalHuffman.Workspace());
+        return new HuffmanDictionary(codeLengths, maxCodeLength, sampleBytes);
+    }
+
+    private static void collectSamples(File file, List<File> samples) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File child : files) {
+                    collectSamples(child, samples);
+                }
+            }
+        } else if (file.isFile()) {
+            samples.add(file);
+        }
+    }
+
+
+    //保存为字典文件
+    public void save(File file) throws IOException {
+        try (DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            dataOutputStream.write(MAGIC_NUMBER);
+            dataOutputStream.writeInt(id);
+            dataOutputStream.writeByte(maxCodeLength);
+            dataOutputStream.writeLong(sampleBytes);
+            CanonicalHuffman.writeCodeLengths(codeLengths, dataOutputStream);
+        }
+    }
+
+    //加载字典文件并放入缓存；同一编号已经加载过时返回缓存中的字典
+    public static HuffmanDictionary load(File file) throws IOException {
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magicNumber = new byte[MAGIC_NUMBER.length];
+            dataInputStream.readFully(magicNumber);
+            if (!Arrays.equals(magicNumber, MAGIC_NUMBER)) {
+                throw new IOException("这不是字典文件: " + file.getName());
+            }
+            int id = dataInputStream.readInt();
+            HuffmanDictionary cached = CACHE.get(id);
+            if (cached != null) {
+                return cached;
+            }
+
+            int maxCodeLength = dataInputStream.readUnsignedByte();
+            long sampleBytes = dataInputStream.readLong();
+            byte[] codeLengths = CanonicalHuffman.readCodeLengths(dataInputStream);
+            HuffmanDictionary dictionary = new HuffmanDictionary(codeLengths, maxCodeLength, sampleBytes);
+            if (dictionary.id != id) {
+                throw new IOException("字典文件已损坏: " + file.getName());
+            }
+            return register(dictionary);
+        }
+    }
+
+    //放入缓存，之后解压引用它的压缩文件时不需要再查找字典文件
+    public static HuffmanDictionary register(HuffmanDictionary dictionary) {
+        HuffmanDictionary previous = CACHE.putIfAbsent(dictionary.id, dictionary);
+        return previous != null ? previous : dictionary;
+    }
+
+    /*
+     * 按编号查找字典：先查缓存，再依次加载压缩文件所在文件夹和 PATH_PROPERTY 中各文件夹里的字典文件。
+     * 无法读取或不是字典的文件跳过，全部候选都不匹配时才报告找不到。编号为 NO_DICTIONARY 时返回 null。
+     */
+    public static HuffmanDictionary find(int id, File compressedFile) throws IOException {
+        if (id == NO_DICTIONARY) {
+            return null;
+        }
+        HuffmanDictionary dictionary = CACHE.get(id);
+        if (dictionary != null) {
+            return dictionary;
+        }
+
+        List<File> folders = new ArrayList<>();
+        folders.add(compressedFile.getAbsoluteFile().getParentFile());
+        String path = System.getProperty(PATH_PROPERTY);
+        if (path != null) {
+            for (String folder : path.split(File.pathSeparator)) {
+                if (!folder.isEmpty()) {
+                    folders.add(new File(folder));
+                }
+            }
+        }
+
+        for (File folder : folders) {
+            File[] files = folder.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                try {
+                    if (load(file).id == id) {
+                        return CACHE.get(id);
+                    }
+                } catch (IOException e) {
+                    // 损坏的或同名的其他文件不影响查找其余的候选
+                }
+            }
+        }
+        throw new FileNotFoundException("找不到编号为 " + String.format("%08x", id) + " 的字典文件");
+    }
+}
@@ -0,0 +1,181 @@
+package allpackage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+//哈夫曼编码的位打包核心：编码保存在原始类型数组中，经由 64 位累加器整字写出，逐字节编码时不产生任何对象
+public class HuffmanEncoder {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // codes 保存编码的低 32 位，码长超过 32 位时高位部分保存在 highCodes 中
+    private final int[] codes = new int[256];
+    private final int[] highCodes = new int[256];
+    private final byte[] lengths = new byte[256];
+
+    // 写入输出流时使用的中间缓冲区，直接写入缓冲区时不需要
+    private byte[] outputBuffer;
+    private ByteBuffer bufferOutput;
+
+    // 当前这段编码数据的状态：output 为 bufferOutput 时写满后交给 outputStream，否则直接写入调用方的缓冲区
+    private OutputStream outputStream;
+    private ByteBuffer output;
+    private int flushThreshold;
+    private long accumulator;
+    private int accumulatorBits;
+    private int outputPosition;
+    private long totalBits;
+
+    //由范式哈夫曼码长表构造
+    public HuffmanEncoder(byte[] codeLengths) {
+        setCodeLengths(codeLengths);
+    }
+
+    //换用另一张范式哈夫曼码长表，便于重复使用同一个编码器
+    public void setCodeLengths(byte[] codeLengths) {
+        CanonicalHuffman.canonicalCodes(codeLengths, codes);
+        System.arraycopy(codeLengths, 0, lengths, 0, 256);
+    }
+
+    //由旧格式的编码字符串表构造
+    public HuffmanEncoder(Map<Byte, String> huffmanCodes) {
+        for (Map.Entry<Byte, String> entry : huffmanCodes.entrySet()) {
+            int symbol = entry.getKey() & 0xFF;
+            String code = entry.getValue();
+            long bits = 0;
+            for (int i = 0; i < code.length(); i++) {
+                bits = (bits << 1) | (code.charAt(i) == '1' ? 1 : 0);
+            }
+            codes[symbol] = (int) bits;
+            highCodes[symbol] = (int) (bits >>> 32);
+            lengths[symbol] = (byte) code.length();
+        }
+    }
+
+
+    //对输入流中的全部数据编码并写入输出流，最后不足一个字节的部分在低位补 0，返回写出的有效位数
+    public long encode(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] inputBuffer = new byte[BUFFER_SIZE];
+        start(outputStream);
+        int bytesRead;
+        while ((bytesRead = inputStream.read(inputBuffer)) != -1) {
+            write(inputBuffer, 0, bytesRead);
+        }
+        return finish();
+    }
+
+
+    //开始向输出流写入一段新的编码数据
+    public void start(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        if (outputBuffer == null) {
+            outputBuffer = new byte[BUFFER_SIZE];
+            bufferOutput = ByteBuffer.wrap(outputBuffer);
+        }
+        output = bufferOutput;
+        flushThreshold = outputBuffer.length - 8;
+        outputPosition = 0;
+        reset();
+    }
+
+    //开始直接向缓冲区的当前位置写入一段新的编码数据，调用方需保证剩余空间能容纳全部编码（可由 encodedBits 得出）
+    public void start(ByteBuffer output) {
+        this.outputStream = null;
+        this.output = output;
+        flushThreshold = Integer.MAX_VALUE;
+        outputPosition = output.position();
+        reset();
+    }
+
+    private void reset() {
+        accumulator = 0;
+        accumulatorBits = 0;
+        totalBits = 0;
+    }
+
+    //编码一段字节，可以多次调用
+    public void write(byte[] data, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(data, offset, length));
+    }
+
+    //编码缓冲区中剩余的全部字节（可以是内存映射的文件），编码后缓冲区的位置移到末尾
+    public void write(ByteBuffer data) throws IOException {
+        long accumulator = this.accumulator;
+        int accumulatorBits = this.accumulatorBits;
+        int outputPosition = this.outputPosition;
+        long totalBits = this.totalBits;
+        ByteBuffer output = this.output;
+        int flushThreshold = this.flushThreshold;
+
+        int end = data.limit();
+        for (int i = data.position(); i < end; i++) {
+            int symbol = data.get(i) & 0xFF;
+            int codeLength = lengths[symbol];
+
+            if (codeLength > 32) {
+                // 超长编码先写出高位部分
+                int highLength = codeLength - 32;
+                accumulator = (accumulator << highLength) | (highCodes[symbol] & 0xFFFFFFFFL);
+                accumulatorBits += highLength;
+                if (accumulatorBits >= 32) {
+                    accumulatorBits -= 32;
+                    output.putInt(outputPosition, (int) (accumulator >>> accumulatorBits));
+                    outputPosition += 4;
+                }
+                codeLength = 32;
+            }
+
+            accumulator = (accumulator << codeLength) | (codes[symbol] & 0xFFFFFFFFL);
+            accumulatorBits += codeLength;
+            totalBits += lengths[symbol];
+
+            // 累加器满 32 位时整字写出
+            if (accumulatorBits >= 32) {
+                accumulatorBits -= 32;
+                output.putInt(outputPosition, (int) (accumulator >>> accumulatorBits));
+                outputPosition += 4;
+                if (outputPosition > flushThreshold) {
+                    outputStream.write(outputBuffer, 0, outputPosition);
+                    outputPosition = 0;
+                }
+            }
+        }
+
+        this.accumulator = accumulator;
+        this.accumulatorBits = accumulatorBits;
+        this.outputPosition = outputPosition;
+        this.totalBits = totalBits;
+        data.position(end);
+    }
+
+    //写出累加器中剩余的位，最后一个字节左对齐，返回这段数据的有效位数
+    public long finish() throws IOException {
+        while (accumulatorBits >= 8) {
+            accumulatorBits -= 8;
+            output.put(outputPosition++, (byte) (accumulator >>> accumulatorBits));
+        }
+        if (accumulatorBits > 0) {
+            output.put(outputPosition++, (byte) (accumulator << (8 - accumulatorBits)));
+            accumulatorBits = 0;
+        }
+        if (outputStream != null) {
+            outputStream.write(outputBuffer, 0, outputPosition);
+            outputPosition = 0;
+        } else {
+            output.position(outputPosition);
+        }
+
+        return totalBits;
+    }
+
+    //按码长表计算编码后的总位数，用于预先确定输出大小
+    public static long encodedBits(long[] frequencies, byte[] codeLengths) {
+        long bits = 0;
+        for (int i = 0; i < 256; i++) {
+            bits += frequencies[i] * codeLengths[i];
+        }
+        return bits;
+    }
+}
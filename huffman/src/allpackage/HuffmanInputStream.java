@@ -0,0 +1,120 @@
+package allpackage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+import static allpackage.HuffmanDecompression.readCodeLengthLimit;
+
+/*
+ * 解压输入流：读取 HuffmanOutputStream 或 StreamCompression 写出的数据，每次解码一个数据块到内部缓冲区。
+ * 只从底层输入流读取到结束标记为止，之后的数据保持不动。
+ */
+public class HuffmanInputStream extends FilterInputStream {
+    private final DataInputStream dataInputStream;
+    private final int maxCodeLength;
+    private final BlockBuffer block = new BlockBuffer();
+    private int position;
+    private boolean endOfStream;
+
+    //创建时立即读取并检查 magic number、格式版本和数据块大小
+    public HuffmanInputStream(InputStream inputStream) throws IOException {
+        super(inputStream);
+        dataInputStream = new DataInputStream(inputStream);
+
+        if (!StreamDecompression.checkMagicNumber(dataInputStream)) {
+            throw new IOException("这不是我创建的数据流，无法解压!");
+        }
+        // 数据流格式一定带有版本标记，直接读取而不依赖 mark/reset，避免从底层流多读数据
+        if (dataInputStream.readUnsignedByte() != HuffmanCompression.FORMAT_MARKER) {
+            throw new IOException("数据流缺少格式版本");
+        }
+        int formatVersion = dataInputStream.readUnsignedByte();
+        if (formatVersion > HuffmanCompression.FORMAT_VERSION) {
+            throw new IOException("不支持的压缩格式版本: " + formatVersion);
+        }
+        maxCodeLength = readCodeLengthLimit(dataInputStream, formatVersion);
+        BlockCodec.checkBlockSize(dataInputStream.readInt());
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == block.size() && !fill()) {
+            return -1;
+        }
+        return block.buffer()[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        if (length == 0) {
+            return 0;
+        }
+        if (position == block.size() && !fill()) {
+            return -1;
+        }
+        int copied = Math.min(length, block.size() - position);
+        System.arraycopy(block.buffer(), position, bytes, offset, copied);
+        position += copied;
+        return copied;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && (position < block.size() || fill())) {
+            int count = (int) Math.min(n - skipped, block.size() - position);
+            position += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return block.size() - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("不支持 mark/reset");
+    }
+
+    //解码下一个数据块，遇到结束标记时返回 false
+    private boolean fill() throws IOException {
+        while (!endOfStream) {
+            int originalLength = dataInputStream.readInt();
+            if (originalLength == BlockCodec.END_OF_BLOCKS) {
+                endOfStream = true;
+                break;
+            }
+            block.reset();
+            BlockCodec.decodeBlock(dataInputStream, originalLength, block, maxCodeLength);
+            position = 0;
+            if (block.size() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //可以直接读取内部数组的输出缓冲区，避免每个数据块多复制一次
+    private static class BlockBuffer extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
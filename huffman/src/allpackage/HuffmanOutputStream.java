@@ -0,0 +1,114 @@
+package allpackage;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import static allpackage.HuffmanCompression.*;
+
+/*
+ * 压缩输出流：写入的数据先放进内部缓冲区，每满一个数据块就编码后写入底层输出流。
+ * 输出格式与 StreamCompression 相同，可以用 HuffmanInputStream 或 unstream 命令解压。
+ * 码长限制、数据块大小和各种数据块编码方式由 CompressionOptions 指定（与数据流模式一样不能使用字典），创建之后不要再修改这个 options。
+ * 使用完毕必须调用 close() 或 finish() 写出最后的数据块和结束标记。
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+    private final DataOutputStream dataOutputStream;
+    private final CompressionOptions options;
+    private final byte[] buffer;
+    private int count;
+    private boolean finished;
+    private boolean closed;
+
+    public HuffmanOutputStream(OutputStream outputStream) throws IOException {
+        this(outputStream, new CompressionOptions());
+    }
+
+    //创建时立即写出 magic number、格式版本和数据块大小
+    public HuffmanOutputStream(OutputStream outputStream, CompressionOptions options) throws IOException {
+        super(outputStream);
+        if (options.dictionary() != null) {
+            throw new IllegalArgumentException("数据流模式不能使用字典");
+        }
+        this.options = options;
+        this.buffer = new byte[options.blockSize()];
+
+        dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.write(STREAM_MAGIC_NUMBER);
+        writeFormatVersion(dataOutputStream, options.maxCodeLength());
+        dataOutputStream.writeInt(options.blockSize());
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[count++] = (byte) b;
+        if (count == buffer.length) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        ensureOpen();
+        while (length > 0) {
+            int copied = Math.min(length, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, copied);
+            count += copied;
+            offset += copied;
+            length -= copied;
+            if (count == buffer.length) {
+                writeBlock();
+            }
+        }
+    }
+
+    //把缓冲区中已有的数据作为一个（较短的）数据块写出，再刷新底层输出流
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeBlock();
+        out.flush();
+    }
+
+    //写出剩余的数据和结束标记，但不关闭底层输出流
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeBlock();
+        dataOutputStream.writeInt(BlockCodec.END_OF_BLOCKS);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (count > 0) {
+            dataOutputStream.write(BlockCodec.encodeBlock(ByteBuffer.wrap(buffer, 0, count), options));
+            count = 0;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("压缩输出流已经结束");
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package allpackage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import allpackage.HuffmanCompression.Node;
+
+//基于查找表的哈夫曼解码器：每次查表直接解出一个（或两个）完整符号，取代逐位遍历哈夫曼树
+public class HuffmanTableDecoder {
+    // 一级表的索引位数，2^11 个 int 可以常驻 L1/L2 缓存
+    public static final int ROOT_BITS = 11;
+    // 码长限制不超过这个值时直接使用单级表，不再需要子表
+    public static final int SINGLE_LEVEL_MAX_BITS = 15;
+
+    // 表项类型，存放在第 26-27 位
+    private static final int KIND_INVALID = 0;
+    private static final int KIND_ONE = 1;
+    private static final int KIND_TWO = 2;
+    private static final int KIND_LINK = 3;
+
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /*
+     * 表项布局：
+     *   符号表项：0-7 位第一个符号，8-15 位第二个符号，16-20 位第一个符号的码长，21-25 位两个符号的总码长
+     *   链接表项：0-4 位子表索引位数，5-25 位子表在数组中的偏移
+     */
+    private int[] table;
+    private int tableSize;
+    private int rootBits;
+    private int[] singles;
+
+    // 由码长表建表时按范式编码顺序排列的字节值、码长和左对齐到 32 位的编码
+    private int[] sortedSymbols;
+    private int[] sortedLengths;
+    private long[] sortedCodes;
+
+    // 当前这次解码的状态，分段输入时在各段之间保留；output 写满 outputLimit 后交给 outputStream
+    private OutputStream outputStream;
+    private byte[] outputBuffer;
+    private ByteBuffer output;
+    private int outputLimit;
+    private int outputPosition;
+    private long bitBuffer;
+    private int bitBufferBits;
+    private long bitsLeft;
+    private long symbols;
+    private long symbolLimit;
+
+    public HuffmanTableDecoder(Node root) {
+        this(root, CanonicalHuffman.MAX_CODE_LENGTH);
+    }
+
+    //maxCodeLength 为压缩文件头中记录的码长限制，用来确定一级表的大小
+    public HuffmanTableDecoder(Node root, int maxCodeLength) {
+        // 空树或只有一个结点的树没有可解码的位
+        if (root == null || HuffmanCompression.isLeaf(root)) {
+            return;
+        }
+
+        int tableBits = maxCodeLength <= SINGLE_LEVEL_MAX_BITS ? maxCodeLength : ROOT_BITS;
+        rootBits = Math.min(tableBits, height(root));
+        table = new int[(1 << rootBits) * 2];
+        tableSize = 1 << rootBits;
+        fillTable(root, 0, rootBits);
+        pairRootEntries();
+    }
+
+    //由范式哈夫曼码长表构造，不需要先重建哈夫曼树
+    public HuffmanTableDecoder(byte[] codeLengths, int maxCodeLength) {
+        setCodeLengths(codeLengths, maxCodeLength);
+    }
+
+    //换用另一张范式哈夫曼码长表重新建表，尽量复用已有的数组，便于重复使用同一个解码器
+    public void setCodeLengths(byte[] codeLengths, int maxCodeLength) {
+        if (sortedSymbols == null) {
+            sortedSymbols = new int[256];
+            sortedLengths = new int[256];
+            sortedCodes = new long[256];
+        }
+
+        // 按（码长，字节值）排列，也就是范式编码从小到大的顺序
+        int count = 0;
+        long code = 0;
+        int previousLength = 0;
+        for (int length = 1; length <= CanonicalHuffman.MAX_CODE_LENGTH; length++) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (codeLengths[symbol] == length) {
+                    code <<= length - previousLength;
+                    previousLength = length;
+                    sortedSymbols[count] = symbol;
+                    sortedLengths[count] = length;
+                    sortedCodes[count] = code << (32 - length);
+                    code++;
+                    count++;
+                }
+            }
+        }
+
+        if (count == 0) {
+            table = null;
+            return;
+        }
+
+        int tableBits = maxCodeLength <= SINGLE_LEVEL_MAX_BITS ? maxCodeLength : ROOT_BITS;
+        rootBits = Math.min(tableBits, previousLength);
+        tableSize = 0;
+        if (table == null) {
+            table = new int[(1 << rootBits) * 2];
+        }
+        allocate(1 << rootBits);
+        fillTable(0, count, 0, 0, rootBits);
+        pairRootEntries();
+    }
+
+    //由排好序的编码填表：first 到 end 为前 consumed 位相同的一组编码，对应从 offset 开始、索引 bits 位的表
+    private void fillTable(int first, int end, int consumed, int offset, int bits) {
+        int i = first;
+        while (i < end) {
+            int length = sortedLengths[i] - consumed;
+            int index = (int) (((sortedCodes[i] << consumed) & 0xFFFFFFFFL) >>> (32 - bits));
+
+            if (length <= bits) {
+                int start = offset + (index & ~((1 << (bits - length)) - 1));
+                int entry = (KIND_ONE << 26) | (length << 21) | (length << 16) | sortedSymbols[i];
+                Arrays.fill(table, start, start + (1 << (bits - length)), entry);
+                i++;
+                continue;
+            }
+
+            // 码长超出当前表：前 consumed + bits 位相同的编码共用一张子表，编码有序所以它们是连续的
+            long prefix = sortedCodes[i] >>> (32 - consumed - bits);
+            int groupEnd = i + 1;
+            while (groupEnd < end && sortedCodes[groupEnd] >>> (32 - consumed - bits) == prefix) {
+                groupEnd++;
+            }
+            int subBits = Math.min(ROOT_BITS, sortedLengths[groupEnd - 1] - consumed - bits);
+            int subOffset = allocate(1 << subBits);
+            table[offset + index] = (KIND_LINK << 26) | (subOffset << 5) | subBits;
+            fillTable(i, groupEnd, consumed + bits, subOffset, subBits);
+            i = groupEnd;
+        }
+    }
+
+    //递归填表：node 为当前子表对应的子树
+    private void fillTable(Node node, int offset, int bits) {
+        fillEntries(node.left, 1, 0, offset, bits);
+        fillEntries(node.right, 1, 1, offset, bits);
+    }
+
+    private void fillEntries(Node node, int depth, int prefix, int offset, int bits) {
+        if (node == null) {
+            return; // 不完整的树，对应表项保持无效
+        }
+
+        if (HuffmanCompression.isLeaf(node)) {
+            int start = offset + (prefix << (bits - depth));
+            int entry = (KIND_ONE << 26) | (depth << 21) | (depth << 16) | (node.data & 0xFF);
+            Arrays.fill(table, start, start + (1 << (bits - depth)), entry);
+            return;
+        }
+
+        if (depth == bits) {
+            // 码长超出当前表，挂接子表
+            int subBits = Math.min(ROOT_BITS, height(node));
+            int subOffset = allocate(1 << subBits);
+            table[offset + prefix] = (KIND_LINK << 26) | (subOffset << 5) | subBits;
+            fillTable(node, subOffset, subBits);
+            return;
+        }
+
+        fillEntries(node.left, depth + 1, prefix << 1, offset, bits);
+        fillEntries(node.right, depth + 1, (prefix << 1) | 1, offset, bits);
+    }
+
+    //一级表中第一个符号之后剩余的位如果恰好能容纳第二个完整符号，就合并成一个双符号表项
+    private void pairRootEntries() {
+        int rootSize = 1 << rootBits;
+        if (singles == null || singles.length < rootSize) {
+            singles = new int[rootSize];
+        }
+        System.arraycopy(table, 0, singles, 0, rootSize);
+
+        for (int index = 0; index < rootSize; index++) {
+            int first = singles[index];
+            if ((first >>> 26) != KIND_ONE) {
+                continue;
+            }
+
+            int firstLength = (first >>> 16) & 0x1F;
+            int second = singles[(index << firstLength) & (rootSize - 1)];
+            if ((second >>> 26) != KIND_ONE) {
+                continue;
+            }
+
+            int secondLength = (second >>> 16) & 0x1F;
+            if (firstLength + secondLength <= rootBits) {
+                table[index] = (KIND_TWO << 26) | ((firstLength + secondLength) << 21) | (firstLength << 16)
+                        | ((second & 0xFF) << 8) | (first & 0xFF);
+            }
+        }
+    }
+
+    //在表数组末尾分配一张清空的子表
+    private int allocate(int size) {
+        int offset = tableSize;
+        tableSize += size;
+        if (tableSize > table.length) {
+            table = Arrays.copyOf(table, Math.max(tableSize, table.length * 2));
+        }
+        Arrays.fill(table, offset, tableSize, KIND_INVALID);
+        return offset;
+    }
+
+    private static int height(Node node) {
+        if (node == null || HuffmanCompression.isLeaf(node)) {
+            return 0;
+        }
+        return 1 + Math.max(height(node.left), height(node.right));
+    }
+
+
+    //从输入流解码，最多读取 bitLimit 位、输出 symbolLimit 个符号，返回实际输出的符号数
+    public long decode(InputStream inputStream, OutputStream outputStream, long bitLimit, long symbolLimit) throws IOException {
+        boolean boundedInput = bitLimit != Long.MAX_VALUE;
+        long bytesLeft = boundedInput ? (bitLimit + 7) >>> 3 : Long.MAX_VALUE;
+
+        if (table == null) {
+            if (boundedInput) {
+                skipFully(inputStream, bytesLeft);
+            }
+            return 0;
+        }
+
+        byte[] inputBuffer = new byte[INPUT_BUFFER_SIZE];
+        ByteBuffer input = ByteBuffer.wrap(inputBuffer, 0, 0);
+        start(outputStream, bitLimit, symbolLimit);
+
+        // 每次读入一段数据交给 decodeChunk，直到解码结束或输入读完
+        boolean finished = false;
+        while (!finished && bytesLeft > 0) {
+            int bytesRead = inputStream.read(inputBuffer, 0, (int) Math.min(inputBuffer.length, bytesLeft));
+            if (bytesRead <= 0) {
+                break;
+            }
+            if (boundedInput) {
+                bytesLeft -= bytesRead;
+            }
+            input.clear().limit(bytesRead);
+            finished = decodeChunk(input, false);
+        }
+        if (!finished) {
+            decodeChunk(input, true);
+        }
+        flush();
+
+        // 提前结束时跳过剩余数据，保证输入流停在这段数据的末尾
+        if (boundedInput && bytesLeft > 0) {
+            skipFully(inputStream, bytesLeft);
+        }
+        return symbols;
+    }
+
+    //直接从缓冲区（例如内存映射的文件）解码，不经过堆上的中间缓冲区；解码后缓冲区的位置移到这段数据的末尾。缓冲区的字节序不影响结果
+    public long decode(ByteBuffer input, OutputStream outputStream, long bitLimit, long symbolLimit) throws IOException {
+        int byteCount = bitLimit == Long.MAX_VALUE ? input.remaining() : (int) Math.min(input.remaining(), (bitLimit + 7) >>> 3);
+        int end = input.position() + byteCount;
+        if (table == null) {
+            input.position(end);
+            return 0;
+        }
+
+        // 位缓冲区按大端顺序整字读取，临时调整调用方缓冲区的字节序
+        ByteOrder order = input.order();
+        int limit = input.limit();
+        input.order(ByteOrder.BIG_ENDIAN).limit(end);
+        start(outputStream, bitLimit, symbolLimit);
+        try {
+            decodeChunk(input, true);
+            flush();
+        } finally {
+            input.order(order).limit(limit);
+        }
+        input.position(end);
+        return symbols;
+    }
+
+    /*
+     * 从缓冲区解码到另一个缓冲区（两者都可以是直接缓冲区），中间不经过任何堆上的数组，也不分配对象。
+     * 输出写在 output 的当前位置，剩余空间必须能容纳 symbolLimit 个字节；返回实际输出的符号数，两个缓冲区的位置都相应后移。
+     * 两个缓冲区的字节序都不影响结果。
+     */
+    public long decode(ByteBuffer input, ByteBuffer output, long bitLimit, long symbolLimit) throws IOException {
+        if (symbolLimit > output.remaining()) {
+            throw new IllegalArgumentException("输出缓冲区空间不足");
+        }
+        int byteCount = bitLimit == Long.MAX_VALUE ? input.remaining() : (int) Math.min(input.remaining(), (bitLimit + 7) >>> 3);
+        int end = input.position() + byteCount;
+        if (table == null) {
+            input.position(end);
+            return 0;
+        }
+
+        ByteOrder order = input.order();
+        int limit = input.limit();
+        input.order(ByteOrder.BIG_ENDIAN).limit(end);
+        start(null, bitLimit, symbolLimit);
+        this.output = output;
+        outputPosition = output.position();
+        outputLimit = Integer.MAX_VALUE;
+        try {
+            decodeChunk(input, true);
+        } finally {
+            input.order(order).limit(limit);
+        }
+        input.position(end);
+        output.position(outputPosition);
+        return symbols;
+    }
+
+    //依次从多个缓冲区（例如分段映射的大文件）解码，编码可以跨越缓冲区的边界
+    public long decode(List<ByteBuffer> inputs, OutputStream outputStream, long bitLimit, long symbolLimit) throws IOException {
+        long bytesLeft = bitLimit == Long.MAX_VALUE ? Long.MAX_VALUE : (bitLimit + 7) >>> 3;
+        if (table == null) {
+            return 0;
+        }
+
+        start(outputStream, bitLimit, symbolLimit);
+        boolean finished = false;
+        for (int i = 0; i < inputs.size() && !finished && bytesLeft > 0; i++) {
+            // 切片按大端顺序读取，与各段缓冲区原来的字节序无关
+            ByteBuffer data = inputs.get(i).slice().order(ByteOrder.BIG_ENDIAN);
+            if (data.remaining() > bytesLeft) {
+                data.limit((int) bytesLeft);
+            }
+            bytesLeft -= data.remaining();
+            finished = decodeChunk(data, i == inputs.size() - 1 || bytesLeft == 0);
+        }
+        flush();
+        return symbols;
+    }
+
+    private void start(OutputStream outputStream, long bitLimit, long symbolLimit) {
+        this.outputStream = outputStream;
+        if (outputStream != null) {
+            if (outputBuffer == null) {
+                outputBuffer = new byte[OUTPUT_BUFFER_SIZE];
+            }
+            output = ByteBuffer.wrap(outputBuffer);
+            outputLimit = outputBuffer.length;
+        }
+        outputPosition = 0;
+        bitBuffer = 0;
+        bitBufferBits = 0;
+        bitsLeft = bitLimit;
+        symbols = 0;
+        this.symbolLimit = symbolLimit;
+    }
+
+    private void flush() throws IOException {
+        outputStream.write(outputBuffer, 0, outputPosition);
+        outputPosition = 0;
+    }
+
+    /*
+     * 解码 input 中的一段数据，返回 true 表示解码已经结束（达到符号数上限、位数上限或遇到无效编码）。
+     * endOfInput 为 false 时，位缓冲区不足 57 位就返回，等待下一段输入，保证不会把编码从中间截断。
+     */
+    private boolean decodeChunk(ByteBuffer input, boolean endOfInput) throws IOException {
+        ByteBuffer output = this.output;
+        int outputLimit = this.outputLimit;
+        int outputPosition = this.outputPosition;
+        // 位缓冲区按高位对齐，bufferBits 为其中有效的位数
+        long buffer = bitBuffer;
+        int bufferBits = bitBufferBits;
+        long bitsLeft = this.bitsLeft;
+        long symbols = this.symbols;
+        long symbolLimit = this.symbolLimit;
+        int rootShift = 64 - rootBits;
+        boolean finished = true;
+
+        while (symbols < symbolLimit) {
+            // 补充位缓冲区，使其至少有 57 位（输入结束时除外）
+            if (bufferBits <= 56 && input.remaining() >= 8) {
+                // 一次取 8 个字节，只计入能完整放进缓冲区的字节；多放入的低位与下次补充的数据相同
+                int position = input.position();
+                int bytes = (64 - bufferBits) >>> 3;
+                buffer |= input.getLong(position) >>> bufferBits;
+                bufferBits += bytes << 3;
+                input.position(position + bytes);
+            }
+            while (bufferBits <= 56 && input.hasRemaining()) {
+                buffer |= (input.get() & 0xFFL) << (56 - bufferBits);
+                bufferBits += 8;
+            }
+            if (bufferBits <= 56 && !endOfInput) {
+                finished = false;
+                break;
+            }
+
+            long available = Math.min(bufferBits, bitsLeft);
+            if (available == 0) {
+                break;
+            }
+
+            int entry = table[(int) (buffer >>> rootShift)];
+            int kind = entry >>> 26;
+            int length;
+
+            if (kind == KIND_LINK) {
+                // 长码：逐级查子表
+                int consumed = rootBits;
+                while (true) {
+                    int subBits = entry & 0x1F;
+                    entry = table[((entry >>> 5) & 0x1FFFFF) + (int) ((buffer << consumed) >>> (64 - subBits))];
+                    kind = entry >>> 26;
+                    if (kind != KIND_LINK) {
+                        break;
+                    }
+                    consumed += subBits;
+                }
+                if (kind == KIND_INVALID) {
+                    break;
+                }
+                length = consumed + ((entry >>> 16) & 0x1F);
+            } else if (kind == KIND_INVALID) {
+                break;
+            } else {
+                length = (entry >>> 16) & 0x1F;
+            }
+
+            // 剩余的位不足以构成一个完整的编码
+            if (length > available) {
+                break;
+            }
+
+            output.put(outputPosition++, (byte) entry);
+            symbols++;
+
+            if (kind == KIND_TWO && symbols < symbolLimit) {
+                int pairLength = (entry >>> 21) & 0x1F;
+                if (pairLength <= available) {
+                    if (outputPosition == outputLimit) {
+                        outputStream.write(outputBuffer, 0, outputPosition);
+                        outputPosition = 0;
+                    }
+                    output.put(outputPosition++, (byte) (entry >>> 8));
+                    symbols++;
+                    length = pairLength;
+                }
+            }
+
+            if (outputPosition == outputLimit) {
+                outputStream.write(outputBuffer, 0, outputPosition);
+                outputPosition = 0;
+            }
+
+            buffer <<= length;
+            bufferBits -= length;
+            bitsLeft -= length;
+        }
+
+        this.outputPosition = outputPosition;
+        bitBuffer = buffer;
+        bitBufferBits = bufferBits;
+        this.bitsLeft = bitsLeft;
+        this.symbols = symbols;
+        return finished;
+    }
+
+    private static void skipFully(InputStream inputStream, long count) throws IOException {
+        while (count > 0) {
+            long skipped = inputStream.skip(count);
+            if (skipped <= 0) {
+                if (inputStream.read() == -1) {
+                    return;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
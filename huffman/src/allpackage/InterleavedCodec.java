@@ -0,0 +1,167 @@
+package allpackage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * 交错多路编码：数据块平均分成 STREAM_COUNT 段，每段编码成一路独立的位流，各路共用一张码表。
+ * 块头中的跳转表记录前几路的字节数，解码时各路在同一个循环里轮流前进一个符号；
+ * 各路的位置互不依赖，处理器可以同时执行几条解码链，单线程解码也能明显加快。
+ * 码长限制为 TABLE_BITS，解码时只用一张单级查找表。
+ */
+public class InterleavedCodec {
+    public static final int STREAM_COUNT = 4;
+    // 交错数据块的码长上限，也是解码表的索引位数
+    public static final int TABLE_BITS = 11;
+    // 解码表项：有效位 | 码长 << 8 | 字节，无效编码的表项为 0
+    private static final int VALID_ENTRY = 0x8000;
+
+    /*
+     * 交错数据块（类型字节之后）的布局：
+     *   码长表
+     *   跳转表：前 STREAM_COUNT - 1 路的编码字节数，各为 int
+     *   各路编码数据依次相连
+     * 原始长度为 length 时，前 STREAM_COUNT - 1 路各编码 length / STREAM_COUNT 个字节，最后一路编码其余字节。
+     */
+
+    //按交错格式编码缓冲区中剩余的字节，frequencies 为这些字节的频率；编码后不能缩小数据时返回 null。编码后缓冲区的位置移到末尾
+    public static byte[] encodeBlock(ByteBuffer data, long[] frequencies, int maxCodeLength) throws IOException {
+        int length = data.remaining();
+        int start = data.position();
+        byte[] codeLengths = new byte[256];
+        CanonicalHuffman.codeLengths(frequencies, Math.min(maxCodeLength, TABLE_BITS), codeLengths, new CanonicalHuffman.Workspace());
+        long payloadBytes = (HuffmanEncoder.encodedBits(frequencies, codeLengths) + 7) >>> 3;
+        if (BlockCodec.isIncompressible(length, payloadBytes + 4 * (STREAM_COUNT - 1), codeLengths)) {
+            return null;
+        }
+
+        // 每路最后一个字节最多多出 1 个字节
+        ByteBuffer block = ByteBuffer.allocate(9 + CanonicalHuffman.codeLengthsSize(codeLengths) + 4 * (STREAM_COUNT - 1) + (int) payloadBytes + STREAM_COUNT);
+        block.putInt(length);
+        block.putInt(0); // 压缩长度稍后回填
+        block.put((byte) BlockCodec.BLOCK_INTERLEAVED);
+        CanonicalHuffman.writeCodeLengths(codeLengths, block);
+        int jumpTable = block.position();
+        block.position(jumpTable + 4 * (STREAM_COUNT - 1));
+
+        HuffmanEncoder encoder = new HuffmanEncoder(codeLengths);
+        int segmentLength = length / STREAM_COUNT;
+        for (int stream = 0; stream < STREAM_COUNT; stream++) {
+            int segmentStart = start + stream * segmentLength;
+            int segmentEnd = stream == STREAM_COUNT - 1 ? start + length : segmentStart + segmentLength;
+            ByteBuffer segment = data.duplicate();
+            segment.position(segmentStart).limit(segmentEnd);
+
+            int streamStart = block.position();
+            encoder.start(block);
+            encoder.write(segment);
+            encoder.finish();
+            if (stream < STREAM_COUNT - 1) {
+                block.putInt(jumpTable + 4 * stream, block.position() - streamStart);
+            }
+        }
+        data.position(start + length);
+
+        block.putInt(4, block.position() - 8);
+        return Arrays.copyOf(block.array(), block.position());
+    }
+
+
+    //解码交错数据块中类型字节之后的部分，输出 originalLength 个字节
+    public static void decodeBlock(ByteBuffer block, int originalLength, OutputStream outputStream) throws IOException {
+        byte[] output = new byte[originalLength];
+        decodeBlock(block, output);
+        outputStream.write(output);
+    }
+
+    //解码到 output，解码的字节数为 output 的长度
+    public static void decodeBlock(ByteBuffer block, byte[] output) throws IOException {
+        // 单级解码表
+        byte[] lengths = new byte[256];
+        int[] codes = new int[256];
+        CanonicalHuffman.readCodeLengths(block, lengths);
+        CanonicalHuffman.canonicalCodes(lengths, codes);
+        char[] table = new char[1 << TABLE_BITS];
+        for (int symbol = 0; symbol < 256; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) {
+                continue;
+            }
+            if (length > TABLE_BITS) {
+                throw new IOException("数据块已损坏");
+            }
+            int first = codes[symbol] << (TABLE_BITS - length);
+            Arrays.fill(table, first, first + (1 << (TABLE_BITS - length)), (char) (VALID_ENTRY | (length << 8) | symbol));
+        }
+
+        // 跳转表给出各路的起点（以位计），最后一路到数据块末尾
+        long[] streamEnds = new long[STREAM_COUNT];
+        int streamStart = 4 * (STREAM_COUNT - 1);
+        for (int stream = 0; stream < STREAM_COUNT - 1; stream++) {
+            int streamLength = block.getInt();
+            if (streamLength < 0 || streamLength > block.limit()) {
+                throw new IOException("数据块已损坏");
+            }
+            streamStart += streamLength;
+            streamEnds[stream] = streamStart * 8L;
+        }
+        int inputLength = block.remaining() + 4 * (STREAM_COUNT - 1);
+        if (streamStart > inputLength) {
+            throw new IOException("数据块已损坏");
+        }
+        streamEnds[STREAM_COUNT - 1] = inputLength * 8L;
+
+        // 编码数据复制到末尾补 8 个字节的数组，每个符号都能直接读取 8 个字节，不必检查是否越界；跳转表也留在数组开头，各路的位置直接从 0 算起
+        byte[] padded = new byte[inputLength + 8];
+        block.position(block.position() - 4 * (STREAM_COUNT - 1));
+        block.get(padded, 0, inputLength);
+        ByteBuffer input = ByteBuffer.wrap(padded);
+
+        // 四路的位置各自独立，循环中的四次查表之间没有依赖
+        int segmentLength = output.length / STREAM_COUNT;
+        long bit0 = 4 * (STREAM_COUNT - 1) * 8L;
+        long bit1 = streamEnds[0];
+        long bit2 = streamEnds[1];
+        long bit3 = streamEnds[2];
+        int out1 = segmentLength;
+        int out2 = segmentLength * 2;
+        int out3 = segmentLength * 3;
+        int valid = VALID_ENTRY;
+        for (int i = 0; i < segmentLength; i++) {
+            int entry0 = table[(int) ((input.getLong((int) (bit0 >>> 3)) << (bit0 & 7)) >>> (64 - TABLE_BITS))];
+            int entry1 = table[(int) ((input.getLong((int) (bit1 >>> 3)) << (bit1 & 7)) >>> (64 - TABLE_BITS))];
+            int entry2 = table[(int) ((input.getLong((int) (bit2 >>> 3)) << (bit2 & 7)) >>> (64 - TABLE_BITS))];
+            int entry3 = table[(int) ((input.getLong((int) (bit3 >>> 3)) << (bit3 & 7)) >>> (64 - TABLE_BITS))];
+            output[i] = (byte) entry0;
+            output[out1 + i] = (byte) entry1;
+            output[out2 + i] = (byte) entry2;
+            output[out3 + i] = (byte) entry3;
+            bit0 += (entry0 >>> 8) & 0x7F;
+            bit1 += (entry1 >>> 8) & 0x7F;
+            bit2 += (entry2 >>> 8) & 0x7F;
+            bit3 += (entry3 >>> 8) & 0x7F;
+            valid &= entry0 & entry1 & entry2 & entry3;
+            // 任何一路越过了自己的末尾都说明数据已损坏，继续读下去可能越过数组的边界
+            if (bit3 > streamEnds[3] || bit2 > streamEnds[2] || bit1 > streamEnds[1] || bit0 > streamEnds[0]) {
+                throw new IOException("数据块已损坏");
+            }
+        }
+
+        // 最后一路多出的几个字节
+        for (int i = out3 + segmentLength; i < output.length; i++) {
+            int entry = table[(int) ((input.getLong((int) (bit3 >>> 3)) << (bit3 & 7)) >>> (64 - TABLE_BITS))];
+            output[i] = (byte) entry;
+            bit3 += (entry >>> 8) & 0x7F;
+            valid &= entry;
+            if (bit3 > streamEnds[3]) {
+                throw new IOException("数据块已损坏");
+            }
+        }
+        if (valid == 0) {
+            throw new IOException("数据块已损坏");
+        }
+        block.position(block.limit());
+    }
+}
@@ -0,0 +1,446 @@
+package allpackage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * LZ77 阶段：在哈夫曼编码之前用哈希链查找数据块中重复出现的字符串，把数据块拆成“若干字面字节 + 一次匹配”的序列。
+ * 字面字节、字面长度码、匹配长度码和距离码分成四路字节流，各用一张范式哈夫曼码表编码；
+ * 长度和距离按对数分桶，桶内偏移作为额外位原样保存。匹配只在数据块内部查找，
+ * 数据块之间仍然互相独立，分块并行和数据流模式都不受影响。
+ *
+ * 努力级别决定哈希链上最多比较的候选数。级别 1 只比较哈希表中最近的一个位置，不分配哈希链，
+ * 匹配内部的位置也不插入哈希表，内存占用只有一张固定大小的哈希表和当前数据块；级别 4 起使用惰性匹配。
+ */
+public class Lz77Codec {
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = 9;
+    public static final int DEFAULT_LEVEL = 5;
+    public static final int MIN_WINDOW_SIZE = 1 << 10;
+    public static final int MAX_WINDOW_SIZE = BlockCodec.MAX_BLOCK_SIZE;
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 18;
+
+    // 最短的匹配长度，也是计算哈希值的字节数
+    public static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 16;
+    // 各级别在哈希链上最多比较的候选数
+    private static final int[] MAX_CHAIN = {0, 1, 4, 8, 16, 32, 64, 128, 512, 4096};
+    // 从这个级别起使用惰性匹配：下一个位置的匹配更长时，当前字节先作为字面字节输出
+    private static final int LAZY_LEVEL = 4;
+    // 找到这么长的匹配后不再查找更长的，也不再做惰性匹配
+    private static final int GOOD_MATCH = 256;
+    // 比这更短的数据块不尝试 LZ77
+    private static final int MIN_BLOCK_LENGTH = 64;
+    // 较大的数据块先在开头这么多字节上试探，匹配覆盖的字节不到 1 / PROBE_MIN_GAIN 时（例如随机数据）放弃 LZ77
+    private static final int PROBE_LENGTH = 1 << 16;
+    private static final int PROBE_MIN_GAIN = 32;
+
+    // 长度和距离的分桶：小于 DIRECT_CODES 的值直接作为桶号，更大的值按最高位分桶，最高位以下的位是额外位
+    private static final int DIRECT_CODES = 16;
+    private static final int DIRECT_BITS = 4;
+
+    /*
+     * LZ77 数据块（类型字节之后）的布局：
+     *   int  序列数
+     *   int  字面字节数
+     *   四路字节流（字面字节、字面长度码、匹配长度码、距离码），每路为：码长表，int 编码字节数，编码数据
+     *   int  额外位的字节数，额外位（按序列依次为字面长度、匹配长度、距离的额外位，高位在前）
+     * 匹配长度记录为长度减 MIN_MATCH，距离记录为距离减 1。
+     * 最后一个序列之后剩余的字面字节不单独记录长度，解码时直接接在输出末尾。
+     */
+
+    public final int level;
+    public final int windowSize;
+    private final ThreadLocal<MatchFinder> matchFinders;
+
+    public Lz77Codec(int level, int windowSize) {
+        checkLevel(level);
+        checkWindowSize(windowSize);
+        this.level = level;
+        this.windowSize = windowSize;
+        this.matchFinders = ThreadLocal.withInitial(MatchFinder::new);
+    }
+
+    public Lz77Codec(int level) {
+        this(level, DEFAULT_WINDOW_SIZE);
+    }
+
+    public static void checkLevel(int level) {
+        if (level < MIN_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("LZ77 级别必须在 " + MIN_LEVEL + " 到 " + MAX_LEVEL + " 之间");
+        }
+    }
+
+    public static void checkWindowSize(int windowSize) {
+        if (windowSize < MIN_WINDOW_SIZE || windowSize > MAX_WINDOW_SIZE || Integer.bitCount(windowSize) != 1) {
+            throw new IllegalArgumentException("LZ77 窗口大小必须是 " + MIN_WINDOW_SIZE + " 到 " + MAX_WINDOW_SIZE + " 字节之间的 2 的幂");
+        }
+    }
+
+
+    //每个线程重复使用的哈希表、哈希链和序列数组
+    private class MatchFinder {
+        final int[] head = new int[1 << HASH_BITS];
+        // 级别 1 不使用哈希链
+        final int[] chain = level > 1 ? new int[windowSize] : null;
+        byte[] data = new byte[0];
+        byte[] literals;
+        int[] literalLengths;
+        int[] matchLengths;
+        int[] distances;
+        int sequenceCount;
+        int literalCount;
+
+        void reset(int length) {
+            if (data.length < length) {
+                data = new byte[length];
+                literals = new byte[length];
+                int maxSequences = length / MIN_MATCH;
+                literalLengths = new int[maxSequences];
+                matchLengths = new int[maxSequences];
+                distances = new int[maxSequences];
+            }
+            clear();
+        }
+
+        //清空哈希表和已找到的序列，数据保持不变
+        void clear() {
+            // 哈希表中保存位置加 1，0 表示空
+            Arrays.fill(head, 0);
+            sequenceCount = 0;
+            literalCount = 0;
+        }
+
+        void addLiterals(int start, int end) {
+            System.arraycopy(data, start, literals, literalCount, end - start);
+            literalCount += end - start;
+        }
+
+        void addSequence(int literalStart, int matchStart, int matchLength, int distance) {
+            addLiterals(literalStart, matchStart);
+            literalLengths[sequenceCount] = matchStart - literalStart;
+            matchLengths[sequenceCount] = matchLength - MIN_MATCH;
+            distances[sequenceCount] = distance - 1;
+            sequenceCount++;
+        }
+    }
+
+    private static int hash(byte[] data, int position) {
+        int word = (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8 | (data[position + 2] & 0xFF) << 16 | data[position + 3] << 24;
+        return (word * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    //值所在的桶
+    private static int code(int value) {
+        if (value < DIRECT_CODES) {
+            return value;
+        }
+        return DIRECT_CODES - DIRECT_BITS + 31 - Integer.numberOfLeadingZeros(value);
+    }
+
+    //桶的额外位数
+    private static int extraBits(int code) {
+        return code < DIRECT_CODES ? 0 : code - (DIRECT_CODES - DIRECT_BITS);
+    }
+
+
+    /*
+     * 按 LZ77 序列编码数据块，完整数据块（含长度字段和类型字节）比 sizeToBeat 小时返回它，否则返回 null；
+     * 不改变缓冲区的位置。序列中的各路字节流使用码长不超过 maxCodeLength 的码表。
+     */
+    public byte[] encodeBlock(ByteBuffer data, int maxCodeLength, long sizeToBeat) throws IOException {
+        int length = data.remaining();
+        if (length < MIN_BLOCK_LENGTH) {
+            return null;
+        }
+
+        // 数据块复制到堆上的数组，匹配查找时可以直接比较数组
+        MatchFinder finder = matchFinders.get();
+        finder.reset(length);
+        data.duplicate().get(finder.data, 0, length);
+        if (length > PROBE_LENGTH * 2) {
+            findMatches(finder, PROBE_LENGTH);
+            if (PROBE_LENGTH - finder.literalCount < PROBE_LENGTH / PROBE_MIN_GAIN) {
+                return null;
+            }
+            finder.clear();
+        }
+        findMatches(finder, length);
+        int sequenceCount = finder.sequenceCount;
+        if (sequenceCount == 0) {
+            return null;
+        }
+
+        // 各路字节流：字面字节和三种桶号
+        byte[][] streams = {finder.literals, new byte[sequenceCount], new byte[sequenceCount], new byte[sequenceCount]};
+        int[] streamLengths = {finder.literalCount, sequenceCount, sequenceCount, sequenceCount};
+        int[][] values = {null, finder.literalLengths, finder.matchLengths, finder.distances};
+        long extraBitCount = 0;
+        for (int stream = 1; stream < streams.length; stream++) {
+            byte[] codes = streams[stream];
+            int[] streamValues = values[stream];
+            for (int i = 0; i < sequenceCount; i++) {
+                int code = code(streamValues[i]);
+                codes[i] = (byte) code;
+                extraBitCount += extraBits(code);
+            }
+        }
+
+        // 先由频率算出完整数据块的大小，不能胜过 sizeToBeat 时不再编码
+        byte[][] codeLengths = new byte[streams.length][256];
+        long[] payloadBytes = new long[streams.length];
+        long[] frequencies = new long[256];
+        CanonicalHuffman.Workspace workspace = new CanonicalHuffman.Workspace();
+        long blockSize = 8 + 1 + 8 + 4 + ((extraBitCount + 7) >>> 3);
+        for (int stream = 0; stream < streams.length; stream++) {
+            Arrays.fill(frequencies, 0);
+            HuffmanCompression.countByteFrequencies(ByteBuffer.wrap(streams[stream], 0, streamLengths[stream]), frequencies);
+            CanonicalHuffman.codeLengths(frequencies, maxCodeLength, codeLengths[stream], workspace);
+            payloadBytes[stream] = (HuffmanEncoder.encodedBits(frequencies, codeLengths[stream]) + 7) >>> 3;
+            blockSize += CanonicalHuffman.codeLengthsSize(codeLengths[stream]) + 4 + payloadBytes[stream];
+        }
+        if (blockSize >= sizeToBeat) {
+            return null;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate((int) blockSize);
+        block.putInt(length);
+        block.putInt((int) blockSize - 8);
+        block.put((byte) BlockCodec.BLOCK_LZ77);
+        block.putInt(sequenceCount);
+        block.putInt(finder.literalCount);
+        HuffmanEncoder encoder = new HuffmanEncoder(codeLengths[0]);
+        for (int stream = 0; stream < streams.length; stream++) {
+            CanonicalHuffman.writeCodeLengths(codeLengths[stream], block);
+            block.putInt((int) payloadBytes[stream]);
+            encoder.setCodeLengths(codeLengths[stream]);
+            encoder.start(block);
+            encoder.write(streams[stream], 0, streamLengths[stream]);
+            encoder.finish();
+        }
+        block.putInt((int) ((extraBitCount + 7) >>> 3));
+        writeExtraBits(finder, block);
+        return block.array();
+    }
+
+    //找出数据块中的全部匹配，结果保存在 finder 的序列数组中
+    private void findMatches(MatchFinder finder, int length) {
+        byte[] data = finder.data;
+        int[] head = finder.head;
+        int[] chain = finder.chain;
+        int maxChain = MAX_CHAIN[level];
+        boolean lazy = level >= LAZY_LEVEL;
+        // 最后一个能计算哈希值的位置
+        int last = length - MIN_MATCH;
+        int literalStart = 0;
+        int position = 0;
+
+        while (position <= last) {
+            long match = longestMatch(data, head, chain, maxChain, position, length);
+            insert(head, chain, data, position);
+            int matchLength = (int) match;
+            if (matchLength < MIN_MATCH) {
+                position++;
+                continue;
+            }
+
+            // 惰性匹配：下一个位置的匹配更长时，当前字节作为字面字节输出
+            if (lazy && matchLength < GOOD_MATCH && position < last && (int) longestMatch(data, head, chain, maxChain, position + 1, length) > matchLength) {
+                position++;
+                continue;
+            }
+
+            finder.addSequence(literalStart, position, matchLength, position - (int) (match >>> 32));
+            int matchEnd = position + matchLength;
+            if (chain != null) {
+                // 匹配内部的位置也加入哈希链，后面的数据可以引用它们
+                int insertEnd = Math.min(matchEnd, last + 1);
+                for (int i = position + 1; i < insertEnd; i++) {
+                    insert(head, chain, data, i);
+                }
+            }
+            position = matchEnd;
+            literalStart = position;
+        }
+        finder.addLiterals(literalStart, length);
+    }
+
+    private void insert(int[] head, int[] chain, byte[] data, int position) {
+        int h = hash(data, position);
+        if (chain != null) {
+            chain[position & (windowSize - 1)] = head[h];
+        }
+        head[h] = position + 1;
+    }
+
+    //沿哈希链查找从 position 开始的最长匹配，返回值的高 32 位为匹配的起点，低 32 位为匹配长度（没有匹配时为 0）
+    private long longestMatch(byte[] data, int[] head, int[] chain, int maxChain, int position, int length) {
+        int maxLength = length - position;
+        // 距离小于窗口大小的位置在哈希链中还没有被覆盖
+        int minCandidate = position - windowSize + 1;
+        int candidate = head[hash(data, position)] - 1;
+        int bestLength = MIN_MATCH - 1;
+        int bestCandidate = 0;
+
+        for (int probes = maxChain; probes > 0 && candidate >= minCandidate && candidate >= 0; probes--) {
+            // 先比较能让匹配变长的那个字节，多数候选在这里就被排除
+            if (data[candidate + bestLength] == data[position + bestLength]) {
+                int mismatch = Arrays.mismatch(data, candidate, candidate + maxLength, data, position, position + maxLength);
+                int matchLength = mismatch < 0 ? maxLength : mismatch;
+                if (matchLength > bestLength) {
+                    bestLength = matchLength;
+                    bestCandidate = candidate;
+                    if (matchLength >= GOOD_MATCH || matchLength == maxLength) {
+                        break;
+                    }
+                }
+            }
+            if (chain == null) {
+                break;
+            }
+            candidate = chain[candidate & (windowSize - 1)] - 1;
+        }
+        return bestLength < MIN_MATCH ? 0 : (long) bestCandidate << 32 | bestLength;
+    }
+
+    //按序列依次写出三种值的额外位，高位在前
+    private static void writeExtraBits(MatchFinder finder, ByteBuffer block) {
+        long accumulator = 0;
+        int accumulatorBits = 0;
+        int[][] values = {finder.literalLengths, finder.matchLengths, finder.distances};
+        for (int i = 0; i < finder.sequenceCount; i++) {
+            for (int[] streamValues : values) {
+                int value = streamValues[i];
+                int bits = extraBits(code(value));
+                if (bits == 0) {
+                    continue;
+                }
+                accumulator = (accumulator << bits) | (value & ((1L << bits) - 1));
+                accumulatorBits += bits;
+                while (accumulatorBits >= 8) {
+                    accumulatorBits -= 8;
+                    block.put((byte) (accumulator >>> accumulatorBits));
+                }
+            }
+        }
+        if (accumulatorBits > 0) {
+            block.put((byte) (accumulator << (8 - accumulatorBits)));
+        }
+    }
+
+
+    //解码 LZ77 数据块中类型字节之后的部分，输出 originalLength 个字节；各路字节流使用码长不超过 maxCodeLength 的码表
+    public static void decodeBlock(ByteBuffer block, int originalLength, OutputStream outputStream, int maxCodeLength) throws IOException {
+        byte[] output = new byte[originalLength];
+        decodeBlock(block, output, maxCodeLength);
+        outputStream.write(output);
+    }
+
+    //解码到 output，解码的字节数为 output 的长度
+    public static void decodeBlock(ByteBuffer block, byte[] output, int maxCodeLength) throws IOException {
+        int originalLength = output.length;
+        int sequenceCount = block.getInt();
+        int literalCount = block.getInt();
+        if (sequenceCount < 0 || sequenceCount > originalLength / MIN_MATCH || literalCount < 0 || literalCount > originalLength) {
+            throw new IOException("数据块已损坏");
+        }
+
+        // 依次解码四路字节流
+        byte[] literals = new byte[literalCount];
+        byte[] literalLengthCodes = new byte[sequenceCount];
+        byte[] matchLengthCodes = new byte[sequenceCount];
+        byte[] distanceCodes = new byte[sequenceCount];
+        byte[] codeLengths = new byte[256];
+        HuffmanTableDecoder decoder = null;
+        for (byte[] stream : new byte[][]{literals, literalLengthCodes, matchLengthCodes, distanceCodes}) {
+            CanonicalHuffman.readCodeLengths(block, codeLengths);
+            int payloadBytes = block.getInt();
+            if (payloadBytes < 0 || payloadBytes > block.remaining()) {
+                throw new IOException("数据块已损坏");
+            }
+            if (decoder == null) {
+                decoder = new HuffmanTableDecoder(codeLengths, maxCodeLength);
+            } else {
+                decoder.setCodeLengths(codeLengths, maxCodeLength);
+            }
+            int limit = block.limit();
+            block.limit(block.position() + payloadBytes);
+            long decoded = decoder.decode(block, ByteBuffer.wrap(stream), payloadBytes * 8L, stream.length);
+            block.limit(limit);
+            if (decoded != stream.length) {
+                throw new IOException("数据块已损坏");
+            }
+        }
+
+        int extraBytes = block.getInt();
+        if (extraBytes < 0 || extraBytes != block.remaining()) {
+            throw new IOException("数据块已损坏");
+        }
+
+        // 按序列重建原始数据
+        long accumulator = 0;
+        int accumulatorBits = 0;
+        int literalPosition = 0;
+        int outputPosition = 0;
+        for (int i = 0; i < sequenceCount; i++) {
+            int literalLength = 0;
+            int matchLength = 0;
+            int distance = 0;
+            for (int field = 0; field < 3; field++) {
+                int code = (field == 0 ? literalLengthCodes : field == 1 ? matchLengthCodes : distanceCodes)[i] & 0xFF;
+                int bits = extraBits(code);
+                int value = code;
+                if (bits > 0) {
+                    if (bits > 31) {
+                        throw new IOException("数据块已损坏");
+                    }
+                    while (accumulatorBits < bits) {
+                        if (!block.hasRemaining()) {
+                            throw new IOException("数据块已损坏");
+                        }
+                        accumulator = (accumulator << 8) | (block.get() & 0xFF);
+                        accumulatorBits += 8;
+                    }
+                    accumulatorBits -= bits;
+                    value = (1 << bits) | (int) ((accumulator >>> accumulatorBits) & ((1L << bits) - 1));
+                }
+                if (field == 0) {
+                    literalLength = value;
+                } else if (field == 1) {
+                    matchLength = value + MIN_MATCH;
+                } else {
+                    distance = value + 1;
+                }
+            }
+
+            if (literalLength > literalCount - literalPosition || literalLength > originalLength - outputPosition) {
+                throw new IOException("数据块已损坏");
+            }
+            System.arraycopy(literals, literalPosition, output, outputPosition, literalLength);
+            literalPosition += literalLength;
+            outputPosition += literalLength;
+
+            if (distance > outputPosition || matchLength > originalLength - outputPosition) {
+                throw new IOException("数据块已损坏");
+            }
+            int source = outputPosition - distance;
+            if (distance >= matchLength) {
+                System.arraycopy(output, source, output, outputPosition, matchLength);
+            } else {
+                // 重叠的匹配需要逐字节复制，复制出的字节会被后面再次引用
+                for (int j = 0; j < matchLength; j++) {
+                    output[outputPosition + j] = output[source + j];
+                }
+            }
+            outputPosition += matchLength;
+        }
+
+        // 剩余的字面字节
+        if (literalCount - literalPosition != originalLength - outputPosition) {
+            throw new IOException("数据块已损坏");
+        }
+        System.arraycopy(literals, literalPosition, output, outputPosition, literalCount - literalPosition);
+    }
+}
@@ -1,15 +1,23 @@
 package allpackage;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 public class Main {
     public static void main(String[] args) {
+        // 带参数启动时只执行这一条命令，便于在管道中使用，例如 cat log | java allpackage.Main stream - log.hstrm
+        if (args.length > 0) {
+            processCommand(args);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
 
         while (true) {
-            System.out.print("请输入命令（huff/unhuff/preview/exit）及相应的路径：");
+            System.out.print("请输入命令（huff/unhuff/extract/stream/unstream/estimate/train/preview/exit）及相应的路径：");
             String commandLine = scanner.nextLine();
             String[] commandArgs = commandLine.split(" ");
 
@@ -36,39 +44,160 @@ public class Main {
                 Compression(args, inputPathName);
                 break;
             case "unhuff":
-                Decompression(inputPathName);
+                Decompression(args, inputPathName);
+                break;
+            case "extract":
+                Extraction(args, inputPathName);
+                break;
+            case "stream":
+            case "unstream":
+                StreamCommand(args, inputPathName);
+                break;
+            case "estimate":
+                Estimation(inputPathName);
+                break;
+            case "train":
+                Training(args, inputPathName);
                 break;
             case "preview":
                 FolderDecompression.previewCompressedStructure(inputPathName);
                 break;
             default:
-                System.out.println("未知命令，请使用 'huff', 'unhuff', 'preview' 或 'exit'");
+                System.out.println("未知命令，请使用 'huff', 'unhuff', 'extract', 'stream', 'unstream', 'estimate', 'train', 'preview' 或 'exit'");
         }
     }
 
+    //huff <输入> <输出> [码长限制] [solid] [context] [dict=<字典文件>] [lz[=级别]] [window=<字节数>] [interleave] [pairs]
     private static void Compression(String[] args, String inputPathName) {
+        // solid 表示对文件夹使用固实模式，context 表示对单个文件使用一阶上下文模式，dict=<字典文件> 表示使用训练好的字典，
+        // lz 表示单个文件的数据块先经过 LZ77 匹配，interleave 表示单个文件的零阶数据块分成几路交错位流，
+        // pairs 表示单个文件的数据块尝试字节对字母表，其余参数按位置解析
+        boolean solid = false;
+        boolean contextModel = false;
+        boolean interleaved = false;
+        boolean pairs = false;
+        HuffmanDictionary dictionary = null;
+        List<String> options = new ArrayList<>();
+        Lz77Codec lz;
+        try {
+            lz = parseLz77(args, options);
+        } catch (IllegalArgumentException e) {
+            System.out.println("LZ77 参数无效：" + e.getMessage());
+            return;
+        }
+        List<String> positional = new ArrayList<>();
+        for (String arg : options) {
+            if (arg.equalsIgnoreCase("solid")) {
+                solid = true;
+            } else if (arg.equalsIgnoreCase("context")) {
+                contextModel = true;
+            } else if (arg.equalsIgnoreCase("interleave")) {
+                interleaved = true;
+            } else if (arg.equalsIgnoreCase("pairs")) {
+                pairs = true;
+            } else if (arg.startsWith("dict=")) {
+                try {
+                    dictionary = HuffmanDictionary.load(new File(arg.substring("dict=".length())));
+                } catch (IOException e) {
+                    System.out.println("无法读取字典文件：" + e.getMessage());
+                    return;
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+        args = positional.toArray(new String[0]);
+
         if (args.length < 3) {
             System.out.println("参数不完整，请输入outputpath。");
             return;
         }
 
+        // 可选的第四个参数为码长限制
+        int maxCodeLength = CanonicalHuffman.MAX_CODE_LENGTH;
+        if (args.length >= 4) {
+            try {
+                maxCodeLength = Integer.parseInt(args[3]);
+                CanonicalHuffman.checkCodeLengthLimit(maxCodeLength);
+            } catch (IllegalArgumentException e) {
+                System.out.println("码长限制无效，请输入 " + CanonicalHuffman.MIN_CODE_LENGTH_LIMIT + " 到 " + CanonicalHuffman.MAX_CODE_LENGTH + " 之间的整数。");
+                return;
+            }
+        }
+
+        CompressionOptions compressionOptions;
+        try {
+            compressionOptions = new CompressionOptions()
+                    .maxCodeLength(maxCodeLength)
+                    .dictionary(dictionary);
+        } catch (IllegalArgumentException e) {
+            System.out.println("字典无效：" + e.getMessage());
+            return;
+        }
+
         long startTime = System.currentTimeMillis(); // 获取开始时间
         String outputPathName = args[2];
         File inputFile = new File(inputPathName);
 
         if (inputFile.isDirectory()) {
             // 文件夹压缩
-            FolderCompression.finalFolderCompression(inputPathName, outputPathName);
+            if (contextModel) {
+                System.out.println("上下文模式只用于单个文件，文件夹按零阶模式压缩。");
+            }
+            if (lz != null) {
+                System.out.println("LZ77 只用于单个文件和数据流，文件夹不使用 LZ77。");
+            }
+            if (interleaved || pairs) {
+                System.out.println("交错位流和字节对字母表只用于单个文件和数据流，文件夹按普通格式压缩。");
+            }
+            compressionOptions.solid(solid);
+            FolderCompression.finalFolderCompression(inputPathName, outputPathName, compressionOptions);
         } else {
             // 文件压缩
-            HuffmanCompression.finalHuffmanCompression(inputPathName, outputPathName);
+            compressionOptions.contextModel(contextModel)
+                    .lz(lz)
+                    .interleaved(interleaved)
+                    .pairs(pairs);
+            HuffmanCompression.finalHuffmanCompression(inputPathName, outputPathName, compressionOptions);
         }
 
         long endTime = System.currentTimeMillis(); // 获取结束时间
         displayCompressionDetails(inputFile, outputPathName, startTime, endTime, true);
     }
 
-    private static void Decompression(String inputPathName) {
+    //取出 lz[=级别] 和 window=<字节数> 参数，其余参数按原来的顺序放入 remaining；没有 lz 参数时返回 null
+    private static Lz77Codec parseLz77(String[] args, List<String> remaining) {
+        Integer level = null;
+        int windowSize = Lz77Codec.DEFAULT_WINDOW_SIZE;
+        for (String arg : args) {
+            if (arg.equalsIgnoreCase("lz")) {
+                level = Lz77Codec.DEFAULT_LEVEL;
+            } else if (arg.startsWith("lz=")) {
+                level = Integer.parseInt(arg.substring("lz=".length()));
+            } else if (arg.startsWith("window=")) {
+                windowSize = Integer.parseInt(arg.substring("window=".length()));
+            } else {
+                remaining.add(arg);
+            }
+        }
+        return level == null ? null : new Lz77Codec(level, windowSize);
+    }
+
+    private static void Decompression(String[] args, String inputPathName) {
+        // 可选的第三个参数为解压线程数
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        if (args.length >= 3) {
+            try {
+                threadCount = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                threadCount = 0;
+            }
+            if (threadCount < 1) {
+                System.out.println("线程数无效，请输入正整数。");
+                return;
+            }
+        }
+
         long startTime = System.currentTimeMillis(); // 获取开始时间
 
         File inputFile = new File(inputPathName);
@@ -83,9 +212,12 @@ public class Main {
             dataInputStream.readFully(magicNumber);
 
             if (Arrays.equals(magicNumber, HuffmanCompression.FILE_MAGIC_NUMBER)) {
-                HuffmanDecompression.finalHuffmanDecompression(inputPathName);
+                HuffmanDecompression.finalHuffmanDecompression(inputPathName, threadCount);
             } else if (Arrays.equals(magicNumber, HuffmanCompression.FOLDER_MAGIC_NUMBER)) {
                 FolderDecompression.finalFolderDecompression(inputPathName);
+            } else if (Arrays.equals(magicNumber, HuffmanCompression.STREAM_MAGIC_NUMBER)) {
+                System.out.println("这是数据流压缩文件，请使用 unstream 命令并指定输出路径。");
+                return;
             } else {
                 System.out.println("这不是我创建的文件，无法解压!");
                 return;
@@ -99,6 +231,166 @@ public class Main {
         displayCompressionDetails(new File(inputPathName), null, startTime, endTime, false);
     }
 
+    //extract <压缩文件> <输出文件夹> <路径或通配符>...
+    private static void Extraction(String[] args, String inputPathName) {
+        if (args.length < 4) {
+            System.out.println("参数不完整，请输入输出文件夹以及要解压的路径或通配符。");
+            return;
+        }
+
+        if (!new File(inputPathName).exists()) {
+            System.out.println("压缩文件不存在。");
+            return;
+        }
+
+        long startTime = System.currentTimeMillis(); // 获取开始时间
+        try {
+            int extracted = FolderDecompression.extractEntries(inputPathName, args[2], Arrays.asList(args).subList(3, args.length));
+            System.out.println("已解压 " + extracted + " 个文件到：" + args[2]);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        long endTime = System.currentTimeMillis(); // 获取结束时间
+        displayCompressionDetails(new File(inputPathName), null, startTime, endTime, false);
+    }
+
+    //stream <输入|-> <输出|-> [码长限制] [lz[=级别]] [window=<字节数>] [interleave] [pairs] 与 unstream <输入|-> <输出|->，"-" 表示标准输入或标准输出
+    private static void StreamCommand(String[] args, String inputPathName) {
+        List<String> remaining = new ArrayList<>();
+        Lz77Codec lz;
+        try {
+            lz = parseLz77(args, remaining);
+        } catch (IllegalArgumentException e) {
+            System.out.println("LZ77 参数无效：" + e.getMessage());
+            return;
+        }
+        boolean interleaved = remaining.removeIf(arg -> arg.equalsIgnoreCase("interleave"));
+        boolean pairs = remaining.removeIf(arg -> arg.equalsIgnoreCase("pairs"));
+        args = remaining.toArray(new String[0]);
+
+        if (args.length < 3) {
+            System.out.println("参数不完整，请输入outputpath。");
+            return;
+        }
+
+        int maxCodeLength = CanonicalHuffman.MAX_CODE_LENGTH;
+        if (args[0].equalsIgnoreCase("stream") && args.length >= 4) {
+            try {
+                maxCodeLength = Integer.parseInt(args[3]);
+                CanonicalHuffman.checkCodeLengthLimit(maxCodeLength);
+            } catch (IllegalArgumentException e) {
+                System.out.println("码长限制无效，请输入 " + CanonicalHuffman.MIN_CODE_LENGTH_LIMIT + " 到 " + CanonicalHuffman.MAX_CODE_LENGTH + " 之间的整数。");
+                return;
+            }
+        }
+
+        long startTime = System.currentTimeMillis(); // 获取开始时间
+        String outputPathName = args[2];
+        if (args[0].equalsIgnoreCase("stream")) {
+            CompressionOptions compressionOptions = new CompressionOptions()
+                    .maxCodeLength(maxCodeLength)
+                    .lz(lz)
+                    .interleaved(interleaved)
+                    .pairs(pairs);
+            StreamCompression.compressStream(inputPathName, outputPathName, compressionOptions);
+        } else {
+            StreamDecompression.decompressStream(inputPathName, outputPathName);
+        }
+        long endTime = System.currentTimeMillis(); // 获取结束时间
+
+        // 输出到标准输出时不能再打印其他信息
+        if (!outputPathName.equals("-")) {
+            displayCompressionDetails(new File(inputPathName), null, startTime, endTime, false);
+        }
+    }
+
+    //estimate <文件或文件夹>：只抽样估计每个文件的压缩率，不进行实际压缩，用于快速了解大文件夹的压缩潜力
+    private static void Estimation(String inputPathName) {
+        File inputFile = new File(inputPathName);
+        if (!inputFile.exists()) {
+            System.out.println("文件或文件夹不存在。");
+            return;
+        }
+
+        long startTime = System.currentTimeMillis(); // 获取开始时间
+        long[] totals = new long[2]; // 原始大小之和、预计压缩后大小之和
+        try {
+            estimateRecursive(inputFile, inputFile.getName(), totals);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (inputFile.isDirectory()) {
+            double ratio = totals[0] != 0 ? (double) totals[1] / totals[0] * 100.0 : 0;
+            System.out.println("合计：原始大小 " + String.format("%.2f", totals[0] / 1024.0) + " KB，预计压缩后 "
+                    + String.format("%.2f", totals[1] / 1024.0) + " KB，预计压缩率 " + String.format("%.2f", ratio) + "%");
+        }
+        long endTime = System.currentTimeMillis(); // 获取结束时间
+        displayCompressionDetails(inputFile, null, startTime, endTime, false);
+    }
+
+    private static void estimateRecursive(File file, String path, long[] totals) throws IOException {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    estimateRecursive(child, path + File.separator + child.getName(), totals);
+                }
+            }
+            return;
+        }
+
+        EntropyEstimator.Estimate estimate = EntropyEstimator.estimate(file);
+        boolean stored = estimate.isIncompressible();
+        long estimatedSize = stored ? estimate.totalBytes : estimate.estimatedSize();
+        totals[0] += estimate.totalBytes;
+        totals[1] += estimatedSize;
+
+        double ratio = estimate.totalBytes != 0 ? (double) estimatedSize / estimate.totalBytes * 100.0 : 0;
+        String sampled = estimate.sampledBytes < estimate.totalBytes ? "，抽样 " + String.format("%.2f", estimate.sampledBytes / 1024.0) + " KB" : "";
+        System.out.println(path + "：熵 " + String.format("%.3f", estimate.entropy) + " 位/字节，预计压缩率 "
+                + String.format("%.2f", ratio) + "%，" + (stored ? "建议原样保存" : "建议哈夫曼编码") + sampled);
+    }
+
+    //train <样本文件或文件夹> <字典文件> [码长限制]：由相似文件的样本训练码长表，压缩时用 dict=<字典文件> 引用
+    private static void Training(String[] args, String inputPathName) {
+        if (args.length < 3) {
+            System.out.println("参数不完整，请输入字典文件的路径。");
+            return;
+        }
+
+        int maxCodeLength = CanonicalHuffman.MAX_CODE_LENGTH;
+        if (args.length >= 4) {
+            try {
+                maxCodeLength = Integer.parseInt(args[3]);
+                CanonicalHuffman.checkCodeLengthLimit(maxCodeLength);
+            } catch (IllegalArgumentException e) {
+                System.out.println("码长限制无效，请输入 " + CanonicalHuffman.MIN_CODE_LENGTH_LIMIT + " 到 " + CanonicalHuffman.MAX_CODE_LENGTH + " 之间的整数。");
+                return;
+            }
+        }
+
+        if (!new File(inputPathName).exists()) {
+            System.out.println("样本文件或文件夹不存在。");
+            return;
+        }
+
+        long startTime = System.currentTimeMillis(); // 获取开始时间
+        try {
+            HuffmanDictionary dictionary = HuffmanDictionary.train(inputPathName, maxCodeLength);
+            dictionary.save(new File(args[2]));
+            System.out.println("字典已保存：" + args[2] + "，编号 " + dictionary.idString() + "，样本 "
+                    + String.format("%.2f", dictionary.sampleBytes / 1024.0) + " KB");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        long endTime = System.currentTimeMillis(); // 获取结束时间
+        displayCompressionDetails(new File(inputPathName), null, startTime, endTime, false);
+    }
+
     private static void displayCompressionDetails(File inputFile, String outputPath, long startTime, long endTime, boolean isCompression) {
         // 计算耗时并转换为毫秒
         double durationMillis = (double)(endTime - startTime); // 确保转换为double
@@ -0,0 +1,30 @@
+package allpackage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+//内存映射输入：直接在映射的缓冲区上统计频率和编解码，省去内核到堆的复制；超过 2 GB 的文件分成多个窗口映射
+public class MappedInput {
+    // 单个映射窗口的默认大小，必须小于 2 GB
+    public static final int WINDOW_SIZE = 1 << 30;
+
+    //映射整个文件
+    public static List<ByteBuffer> map(FileChannel channel) throws IOException {
+        return map(channel, 0, channel.size(), WINDOW_SIZE);
+    }
+
+    //把文件中从 position 开始的 length 个字节映射为若干个只读窗口，每个窗口最多 windowSize 字节
+    public static List<ByteBuffer> map(FileChannel channel, long position, long length, int windowSize) throws IOException {
+        List<ByteBuffer> windows = new ArrayList<>();
+        long offset = 0;
+        while (offset < length) {
+            long size = Math.min(windowSize, length - offset);
+            windows.add(channel.map(FileChannel.MapMode.READ_ONLY, position + offset, size));
+            offset += size;
+        }
+        return windows;
+    }
+}
@@ -0,0 +1,219 @@
+package allpackage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import allpackage.HuffmanCompression.Node;
+
+/*
+ * 字节对字母表（实验性）：数据块中没有出现过的字节值用来表示最常见的字节对，
+ * 字母表仍是 256 个符号，建树、码长表和编码器都不用改动；解码时一次查表可以输出两个字节。
+ * 字节种类越少（文本、日志等低熵数据），可用的空位越多，能覆盖的字节对也越多。
+ * 码长不超过 TABLE_BITS（文件头记录的码长限制更小时取后者），解码时只用一张单级查找表。
+ */
+public class PairCodec {
+    // 字节对数据块的码长上限，也是解码表的索引位数
+    public static final int TABLE_BITS = 11;
+    // 字节对至少出现这么多次才值得占用一个符号
+    private static final int MIN_PAIR_COUNT = 16;
+    // 解码表项：有效位 | 输出字节数 << 20 | 码长 << 16 | 第二个字节 << 8 | 第一个字节，无效编码的表项为 0
+    private static final int VALID_ENTRY = 1 << 31;
+    // 块头中长度字段、类型字节和字节对数量占用的字节数
+    private static final int HEADER_SIZE = 9 + 1;
+
+    /*
+     * 字节对数据块（类型字节之后）的布局：
+     *   byte 字节对数量 n（1-255）
+     *   n 个字节对，每个 3 字节：表示它的符号，第一个字节，第二个字节
+     *   码长表
+     *   编码数据：从前往后贪心解析，当前位置和下一个字节组成字母表中的字节对时编码为一个符号，否则按单个字节编码
+     */
+
+    //按字节对字母表编码数据块，码长不超过 maxCodeLength 和 TABLE_BITS；完整数据块（含长度字段和类型字节）不比 sizeToBeat 大时返回它，否则返回 null；不改变缓冲区的位置
+    public static byte[] encodeBlock(ByteBuffer data, int maxCodeLength, long sizeToBeat) throws IOException {
+        int length = data.remaining();
+        int start = data.position();
+        if (length < 2) {
+            return null;
+        }
+
+        // 字节频率和（重叠计数的）字节对频率
+        long[] byteCounts = new long[256];
+        int[] pairCounts = new int[1 << 16];
+        int previous = data.get(start) & 0xFF;
+        byteCounts[previous]++;
+        for (int i = start + 1; i < start + length; i++) {
+            int current = data.get(i) & 0xFF;
+            byteCounts[current]++;
+            pairCounts[(previous << 8) | current]++;
+            previous = current;
+        }
+
+        // 没有出现过的字节值依次分配给出现次数最多的字节对
+        int[] pairSymbol = selectPairs(byteCounts, pairCounts);
+        if (pairSymbol == null) {
+            return null;
+        }
+        int pairCount = 0;
+        byte[] pairList = new byte[255 * 3];
+        for (int pair = 0; pair < pairSymbol.length; pair++) {
+            if (pairSymbol[pair] >= 0) {
+                pairList[pairCount * 3] = (byte) pairSymbol[pair];
+                pairList[pairCount * 3 + 1] = (byte) (pair >>> 8);
+                pairList[pairCount * 3 + 2] = (byte) pair;
+                pairCount++;
+            }
+        }
+
+        // 贪心解析成符号序列，统计符号频率
+        byte[] symbols = new byte[length];
+        int symbolCount = 0;
+        long[] frequencies = new long[256];
+        int end = start + length;
+        int i = start;
+        while (i < end) {
+            int current = data.get(i) & 0xFF;
+            int symbol = i + 1 < end ? pairSymbol[(current << 8) | (data.get(i + 1) & 0xFF)] : -1;
+            if (symbol >= 0) {
+                i += 2;
+            } else {
+                symbol = current;
+                i++;
+            }
+            symbols[symbolCount++] = (byte) symbol;
+            frequencies[symbol]++;
+        }
+
+        Node root = HuffmanCompression.buildHuffmanTree(frequencies);
+        byte[] codeLengths = CanonicalHuffman.codeLengths(root, Math.min(maxCodeLength, TABLE_BITS));
+        long payloadBytes = (HuffmanEncoder.encodedBits(frequencies, codeLengths) + 7) >>> 3;
+        long blockSize = HEADER_SIZE + pairCount * 3 + CanonicalHuffman.codeLengthsSize(codeLengths) + payloadBytes;
+        if (blockSize > sizeToBeat) {
+            return null;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate((int) blockSize);
+        block.putInt(length);
+        block.putInt((int) blockSize - 8);
+        block.put((byte) BlockCodec.BLOCK_PAIRS);
+        block.put((byte) pairCount);
+        block.put(pairList, 0, pairCount * 3);
+        CanonicalHuffman.writeCodeLengths(codeLengths, block);
+        HuffmanEncoder encoder = new HuffmanEncoder(codeLengths);
+        encoder.start(block);
+        encoder.write(symbols, 0, symbolCount);
+        encoder.finish();
+        return block.array();
+    }
+
+    //为每个字节对选出表示它的符号（没有选中的为 -1）；没有空闲的字节值或没有值得编码的字节对时返回 null
+    private static int[] selectPairs(long[] byteCounts, int[] pairCounts) {
+        int freeCount = 0;
+        for (long count : byteCounts) {
+            if (count == 0) {
+                freeCount++;
+            }
+        }
+        if (freeCount == 0) {
+            return null;
+        }
+
+        // 出现次数最多的 freeCount 个字节对：按次数的高 32 位、字节对的低 16 位排序
+        long[] candidates = new long[pairCounts.length];
+        int candidateCount = 0;
+        for (int pair = 0; pair < pairCounts.length; pair++) {
+            if (pairCounts[pair] >= MIN_PAIR_COUNT) {
+                candidates[candidateCount++] = ((long) pairCounts[pair] << 16) | pair;
+            }
+        }
+        if (candidateCount == 0) {
+            return null;
+        }
+        Arrays.sort(candidates, 0, candidateCount);
+
+        int[] pairSymbol = new int[pairCounts.length];
+        Arrays.fill(pairSymbol, -1);
+        int symbol = 0;
+        for (int i = candidateCount - 1; i >= Math.max(0, candidateCount - freeCount); i--) {
+            while (byteCounts[symbol] != 0) {
+                symbol++;
+            }
+            pairSymbol[(int) (candidates[i] & 0xFFFF)] = symbol++;
+        }
+        return pairSymbol;
+    }
+
+
+    //解码字节对数据块中类型字节之后的部分，输出 originalLength 个字节
+    public static void decodeBlock(ByteBuffer block, int originalLength, OutputStream outputStream) throws IOException {
+        // 字节对可能在最后多写一个字节，输出数组多留一个字节
+        byte[] output = new byte[originalLength + 1];
+        decodeBlock(block, output, originalLength);
+        outputStream.write(output, 0, originalLength);
+    }
+
+    //解码 originalLength 个字节到 output，output 至少要比 originalLength 长一个字节
+    public static void decodeBlock(ByteBuffer block, byte[] output, int originalLength) throws IOException {
+        // 每个符号默认表示它自己，字节对的符号改为表示两个字节
+        int[] expansion = new int[256];
+        for (int symbol = 0; symbol < 256; symbol++) {
+            expansion[symbol] = (1 << 20) | symbol;
+        }
+        int pairCount = block.get() & 0xFF;
+        if (pairCount == 0) {
+            throw new IOException("数据块已损坏");
+        }
+        for (int i = 0; i < pairCount; i++) {
+            int symbol = block.get() & 0xFF;
+            int first = block.get() & 0xFF;
+            int second = block.get() & 0xFF;
+            expansion[symbol] = (2 << 20) | (second << 8) | first;
+        }
+
+        byte[] lengths = new byte[256];
+        int[] codes = new int[256];
+        CanonicalHuffman.readCodeLengths(block, lengths);
+        CanonicalHuffman.canonicalCodes(lengths, codes);
+        int[] table = new int[1 << TABLE_BITS];
+        for (int symbol = 0; symbol < 256; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) {
+                continue;
+            }
+            if (length > TABLE_BITS) {
+                throw new IOException("数据块已损坏");
+            }
+            int first = codes[symbol] << (TABLE_BITS - length);
+            Arrays.fill(table, first, first + (1 << (TABLE_BITS - length)), VALID_ENTRY | (length << 16) | expansion[symbol]);
+        }
+
+        // 编码数据复制到末尾补 8 个字节的数组，每个符号直接读取 8 个字节，不必检查是否越界
+        int inputLength = block.remaining();
+        byte[] padded = new byte[inputLength + 8];
+        block.get(padded, 0, inputLength);
+        ByteBuffer input = ByteBuffer.wrap(padded);
+        long endBit = inputLength * 8L;
+
+        // 每次查表都写出两个字节，再按表项中的字节数前进
+        long bit = 0;
+        int outputPosition = 0;
+        while (outputPosition < originalLength) {
+            int entry = table[(int) ((input.getLong((int) (bit >>> 3)) << (bit & 7)) >>> (64 - TABLE_BITS))];
+            if (entry == 0) {
+                throw new IOException("数据块已损坏");
+            }
+            output[outputPosition] = (byte) entry;
+            output[outputPosition + 1] = (byte) (entry >>> 8);
+            outputPosition += (entry >>> 20) & 3;
+            bit += (entry >>> 16) & 0xF;
+            if (bit > endBit) {
+                throw new IOException("数据块已损坏");
+            }
+        }
+        if (outputPosition != originalLength) {
+            throw new IOException("数据块已损坏");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package allpackage;
+
+import java.io.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static allpackage.HuffmanCompression.*;
+
+/*
+ * 数据流压缩：一遍读入长度未知的输入（管道、套接字等），每读满一个数据块就用这一块自己的频率
+ * 建立码长表并编码，内存占用只与数据块大小有关，不需要先把输入暂存下来。
+ *
+ * 压缩文件布局：
+ *   "HSTRM"，格式版本，码长限制
+ *   int  数据块大小
+ *   若干数据块（与单文件的分块格式相同）
+ *   int  0（结束标记）
+ */
+public class StreamCompression {
+
+    public static void compressStream(InputStream inputStream, OutputStream outputStream) throws IOException {
+        compressStream(inputStream, outputStream, new CompressionOptions());
+    }
+
+    //按 options 压缩输入流直到其结束，返回读取的原始字节数；输出流不会被关闭。
+    //LZ77 匹配只在数据块内部查找，内存占用仍然只与数据块大小有关；数据流的文件头不记录字典，不能使用字典
+    public static long compressStream(InputStream inputStream, OutputStream outputStream, CompressionOptions options) throws IOException {
+        if (options.dictionary() != null) {
+            throw new IllegalArgumentException("数据流模式不能使用字典");
+        }
+        int maxCodeLength = options.maxCodeLength();
+        int blockSize = options.blockSize();
+
+        DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+        // 写入 magic number、格式版本和数据块大小
+        dataOutputStream.write(STREAM_MAGIC_NUMBER);
+        writeFormatVersion(dataOutputStream, maxCodeLength);
+        dataOutputStream.writeInt(blockSize);
+
+        // 逐块编码，最后写入结束标记
+        long totalLength = BlockCodec.compressBlocks(inputStream, dataOutputStream, ForkJoinPool.commonPool(), options);
+        dataOutputStream.writeInt(BlockCodec.END_OF_BLOCKS);
+        dataOutputStream.flush();
+        return totalLength;
+    }
+
+    //压缩文件或标准输入（路径为 "-"）到文件或标准输出
+    public static void compressStream(String inputPath, String outputPath, CompressionOptions options) {
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            inputStream = openInput(inputPath);
+            outputStream = openOutput(outputPath);
+            compressStream(inputStream, outputStream, options);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close(inputStream);
+            close(outputStream);
+        }
+    }
+
+    //路径为 "-" 时使用标准输入
+    static InputStream openInput(String path) throws IOException {
+        return "-".equals(path) ? System.in : new FileInputStream(path);
+    }
+
+    //路径为 "-" 时使用标准输出
+    static OutputStream openOutput(String path) throws IOException {
+        return "-".equals(path) ? System.out : new FileOutputStream(path);
+    }
+
+    //关闭打开的文件，标准输入输出保持打开
+    static void close(Closeable stream) {
+        if (stream == null || stream == System.in || stream == System.out) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package allpackage;
+
+import java.io.*;
+import java.util.Arrays;
+
+//数据流解压：一遍读取 StreamCompression 写出的数据块，直到结束标记
+public class StreamDecompression {
+
+    //解压输入流中的一个压缩数据流，返回输出的字节数；输出流不会被关闭
+    public static long decompressStream(InputStream inputStream, OutputStream outputStream) throws IOException {
+        HuffmanInputStream huffmanInputStream = new HuffmanInputStream(new BufferedInputStream(inputStream));
+        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream);
+        long totalLength = huffmanInputStream.transferTo(bufferedOutputStream);
+        bufferedOutputStream.flush();
+        return totalLength;
+    }
+
+    //解压文件或标准输入（路径为 "-"）到文件或标准输出
+    public static void decompressStream(String inputPath, String outputPath) {
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            inputStream = StreamCompression.openInput(inputPath);
+            outputStream = StreamCompression.openOutput(outputPath);
+            decompressStream(inputStream, outputStream);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            StreamCompression.close(inputStream);
+            StreamCompression.close(outputStream);
+        }
+    }
+
+    public static boolean checkMagicNumber(DataInputStream dataInputStream) throws IOException {
+        byte[] actualMagicNumber = new byte[HuffmanCompression.STREAM_MAGIC_NUMBER.length];
+        dataInputStream.readFully(actualMagicNumber);
+        // 比较读取到的 Magic Number 与预期的 Magic Number 是否一致
+        return Arrays.equals(actualMagicNumber, HuffmanCompression.STREAM_MAGIC_NUMBER);
+    }
+}
@@ -0,0 +1,115 @@
+package allpackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/*
+ * 字典的码长限制与压缩文件头中码长限制的对照检查（码长限制 8 到 11）：
+ *   码长限制比文件大的字典（例如按默认的 32 位训练）必须被 CompressionOptions 拒绝；
+ *   码长限制不超过文件的字典，单个文件（也同时打开上下文模式和字节对字母表）、文件夹和固实文件夹都要能正确还原。
+ *
+ * 在仓库根目录运行：java -cp <编译输出> allpackage.DictionaryLimitCheck [样本文件 样本文件夹]
+ * 发现问题时抛出 AssertionError。
+ */
+public class DictionaryLimitCheck {
+
+    public static void main(String[] args) throws IOException {
+        File sampleFile = new File(args.length > 0 ? args[0] : "testcase02NormalSingleFile/9.htm");
+        File sampleFolder = new File(args.length > 1 ? args[1] : "testcase5NomalFolder");
+        if (!sampleFile.isFile() || !sampleFolder.isDirectory()) {
+            throw new AssertionError("没有找到样本文件或样本文件夹，请在仓库根目录运行");
+        }
+
+        File work = Files.createTempDirectory("dictionary-limit").toFile();
+        try {
+            HuffmanDictionary unlimited = HuffmanDictionary.train(sampleFile.getPath(), CanonicalHuffman.MAX_CODE_LENGTH);
+            for (int limit = 8; limit <= 11; limit++) {
+                expectRejected(unlimited, limit);
+
+                for (int dictionaryLimit = CanonicalHuffman.MIN_CODE_LENGTH_LIMIT; dictionaryLimit <= limit; dictionaryLimit++) {
+                    HuffmanDictionary dictionary = HuffmanDictionary.register(HuffmanDictionary.train(sampleFile.getPath(), dictionaryLimit));
+                    int longest = 0;
+                    for (byte length : dictionary.getCodeLengths()) {
+                        longest = Math.max(longest, length);
+                    }
+                    if (longest > limit) {
+                        throw new AssertionError("码长限制为 " + dictionaryLimit + " 的字典含有 " + longest + " 位的编码");
+                    }
+
+                    String name = "limit" + limit + "-dict" + dictionaryLimit;
+                    CompressionOptions options = new CompressionOptions().maxCodeLength(limit).dictionary(dictionary);
+                    checkFile(sampleFile, new File(work, name + "-file"), options);
+                    checkFile(sampleFile, new File(work, name + "-modes"), new CompressionOptions().maxCodeLength(limit).dictionary(dictionary).contextModel(true).pairs(true));
+                    checkFolder(sampleFolder, new File(work, name + "-folder"), options);
+                    checkFolder(sampleFolder, new File(work, name + "-solid"), new CompressionOptions().maxCodeLength(limit).dictionary(dictionary).solid(true));
+                }
+            }
+        } finally {
+            delete(work);
+        }
+        System.out.println("字典的码长限制检查通过");
+    }
+
+    //字典的码长限制超过文件的码长限制时，无论先设置哪一项都必须被拒绝
+    private static void expectRejected(HuffmanDictionary dictionary, int limit) {
+        try {
+            new CompressionOptions().maxCodeLength(limit).dictionary(dictionary);
+            throw new AssertionError("码长限制为 " + limit + " 时没有拒绝码长限制为 " + dictionary.maxCodeLength + " 的字典");
+        } catch (IllegalArgumentException expected) {
+            // 预期的结果
+        }
+        try {
+            new CompressionOptions().dictionary(dictionary).maxCodeLength(limit);
+            throw new AssertionError("先设置字典后，码长限制 " + limit + " 没有被拒绝");
+        } catch (IllegalArgumentException expected) {
+            // 预期的结果
+        }
+    }
+
+    private static void checkFile(File sample, File folder, CompressionOptions options) throws IOException {
+        folder.mkdirs();
+        File archive = new File(folder, sample.getName() + ".huff");
+        HuffmanCompression.compressFile(sample.getPath(), archive.getPath(), options);
+        HuffmanDecompression.decompressFile(archive.getPath());
+        expectSame(sample, new File(folder, sample.getName()), folder.getName());
+    }
+
+    private static void checkFolder(File sample, File folder, CompressionOptions options) throws IOException {
+        folder.mkdirs();
+        File archive = new File(folder, sample.getName() + ".huff");
+        FolderCompression.compressFolder(sample.getPath(), archive.getPath(), options);
+        FolderDecompression.decompressFolder(archive.getPath());
+        expectSame(sample, new File(folder, sample.getName()), folder.getName());
+    }
+
+    private static void expectSame(File expected, File actual, String label) throws IOException {
+        if (expected.isDirectory()) {
+            String[] expectedNames = expected.list();
+            String[] actualNames = actual.list();
+            if (expectedNames == null || actualNames == null) {
+                throw new AssertionError(label + "：没有还原出文件夹 " + actual);
+            }
+            Arrays.sort(expectedNames);
+            Arrays.sort(actualNames);
+            if (!Arrays.equals(expectedNames, actualNames)) {
+                throw new AssertionError(label + "：文件夹 " + actual + " 的内容与原来不同");
+            }
+            for (String name : expectedNames) {
+                expectSame(new File(expected, name), new File(actual, name), label);
+            }
+        } else if (!actual.isFile() || !Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()))) {
+            throw new AssertionError(label + "：" + actual + " 与原始文件不一致");
+        }
+    }
+
+    private static void delete(File root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
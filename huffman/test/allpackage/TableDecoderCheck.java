@@ -0,0 +1,187 @@
+package allpackage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import allpackage.HuffmanCompression.Node;
+
+/*
+ * 查表解码器与逐位遍历哈夫曼树的参考实现（HuffmanDecompression.referenceDecompressBinaryData）的对照检查。
+ * 对语料中的每个文件和若干边界情况（只有一种字节、256 种字节均匀分布、码长达到限制的长码），
+ * 在几种码长限制下编码，再分别用参考实现和查表解码器的各个入口解码，结果必须与原始数据一致。
+ * 码长限制覆盖单级表（不超过 15 位）和带子表（超过 15 位，最长 32 位）两种情况。
+ *
+ * 在仓库根目录运行：java -cp <编译输出> allpackage.TableDecoderCheck [文件或文件夹...]
+ * 不带参数时检查 testcase02NormalSingleFile 和 testcase5NomalFolder；发现不一致时抛出 AssertionError。
+ */
+public class TableDecoderCheck {
+    private static final int[] LIMITS = {8, 11, 12, 15, 16, 20, 32};
+
+    private static int cases;
+
+    public static void main(String[] args) throws IOException {
+        String[] paths = args.length > 0 ? args : new String[]{"testcase02NormalSingleFile", "testcase5NomalFolder"};
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            collectFiles(new File(path), files);
+        }
+        if (files.isEmpty()) {
+            throw new AssertionError("没有找到语料文件，请在仓库根目录运行");
+        }
+        for (File file : files) {
+            checkAllLimits(file.getPath(), Files.readAllBytes(file.toPath()));
+        }
+
+        // 边界情况
+        byte[] single = new byte[1000];
+        Arrays.fill(single, (byte) 'a');
+        checkAllLimits("只有一种字节", single);
+        checkAllLimits("只有一个字节", new byte[]{42});
+        checkAllLimits("两种字节", "abababababbbbbbbbbbbbbbbba".getBytes());
+
+        byte[] uniform = new byte[256 * 64];
+        for (int i = 0; i < uniform.length; i++) {
+            uniform[i] = (byte) i;
+        }
+        checkAllLimits("256 种字节均匀分布", uniform);
+
+        byte[] random = new byte[1 << 20];
+        new Random(1).nextBytes(random);
+        checkAllLimits("随机数据", random);
+
+        // 斐波那契频率使哈夫曼树退化成一条链，码长达到每个限制的上限
+        byte[] skewed = fibonacciData(34);
+        for (int limit : LIMITS) {
+            byte[] lengths = codeLengths(skewed, limit);
+            int longest = 0;
+            for (byte length : lengths) {
+                longest = Math.max(longest, length);
+            }
+            if (longest != limit) {
+                throw new AssertionError("斐波那契数据在码长限制 " + limit + " 下的最长码长为 " + longest);
+            }
+            check("斐波那契频率（最长码长 " + limit + "）", skewed, limit);
+        }
+
+        System.out.println("查表解码器与参考实现一致，共检查 " + cases + " 种情况");
+    }
+
+    private static void collectFiles(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    collectFiles(child, files);
+                }
+            }
+        } else if (file.isFile()) {
+            files.add(file);
+        }
+    }
+
+    //字节 i 出现 fib(i + 1) 次，共 count 种字节，按字节值顺序重复排列
+    private static byte[] fibonacciData(int count) {
+        long[] frequencies = new long[count];
+        frequencies[0] = 1;
+        frequencies[1] = 1;
+        long total = 2;
+        for (int i = 2; i < count; i++) {
+            frequencies[i] = frequencies[i - 1] + frequencies[i - 2];
+            total += frequencies[i];
+        }
+        byte[] data = new byte[(int) total];
+        int position = 0;
+        for (int symbol = 0; symbol < count; symbol++) {
+            Arrays.fill(data, position, position + (int) frequencies[symbol], (byte) symbol);
+            position += (int) frequencies[symbol];
+        }
+        // 打乱顺序，避免编码数据全是相同的长串
+        Random random = new Random(2);
+        for (int i = data.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte t = data[i];
+            data[i] = data[j];
+            data[j] = t;
+        }
+        return data;
+    }
+
+    private static void checkAllLimits(String name, byte[] data) throws IOException {
+        for (int limit : LIMITS) {
+            check(name, data, limit);
+        }
+    }
+
+    private static byte[] codeLengths(byte[] data, int limit) {
+        byte[] lengths = new byte[256];
+        CanonicalHuffman.codeLengths(ByteHistogram.count(data, 0, data.length), limit, lengths, new CanonicalHuffman.Workspace());
+        return lengths;
+    }
+
+    private static void check(String name, byte[] data, int limit) throws IOException {
+        cases++;
+        String label = name + "，码长限制 " + limit;
+        byte[] lengths = codeLengths(data, limit);
+        HuffmanEncoder encoder = new HuffmanEncoder(lengths);
+        ByteArrayOutputStream encodedStream = new ByteArrayOutputStream();
+        encoder.start(encodedStream);
+        encoder.write(data, 0, data.length);
+        long bitCount = encoder.finish();
+        byte[] encoded = encodedStream.toByteArray();
+
+        // 参考实现
+        Node root = CanonicalHuffman.rebuildHuffmanTree(lengths);
+        ByteArrayOutputStream reference = new ByteArrayOutputStream();
+        HuffmanDecompression.referenceDecompressBinaryData(reference, root, encoded, bitCount);
+        expect(label + "，参考实现", data, reference.toByteArray());
+
+        // 由码长表建表和由哈夫曼树建表两种构造方式
+        HuffmanTableDecoder[] decoders = {new HuffmanTableDecoder(lengths, limit), new HuffmanTableDecoder(root, limit)};
+        for (int i = 0; i < decoders.length; i++) {
+            HuffmanTableDecoder decoder = decoders[i];
+            String decoderLabel = label + (i == 0 ? "，码长表建表" : "，哈夫曼树建表");
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            decoder.decode(new ByteArrayInputStream(encoded), output, bitCount, data.length);
+            expect(decoderLabel + "，输入流", data, output.toByteArray());
+
+            output.reset();
+            decoder.decode(ByteBuffer.wrap(encoded), output, bitCount, data.length);
+            expect(decoderLabel + "，缓冲区", data, output.toByteArray());
+
+            // 小端字节序的直接缓冲区之间解码
+            ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length).order(ByteOrder.LITTLE_ENDIAN);
+            direct.put(encoded).flip();
+            ByteBuffer target = ByteBuffer.allocateDirect(data.length);
+            decoder.decode(direct, target, bitCount, data.length);
+            byte[] decoded = new byte[data.length];
+            target.flip();
+            target.get(decoded);
+            expect(decoderLabel + "，直接缓冲区", data, decoded);
+
+            // 分成几段不等长的缓冲区，编码跨越段的边界
+            List<ByteBuffer> pieces = new ArrayList<>();
+            for (int offset = 0, piece = 1; offset < encoded.length; offset += piece, piece = piece * 3 + 1) {
+                pieces.add(ByteBuffer.wrap(encoded, offset, Math.min(piece, encoded.length - offset)).slice());
+            }
+            output.reset();
+            decoder.decode(pieces, output, bitCount, data.length);
+            expect(decoderLabel + "，分段缓冲区", data, output.toByteArray());
+        }
+    }
+
+    private static void expect(String label, byte[] expected, byte[] actual) {
+        if (!Arrays.equals(expected, actual)) {
+            int mismatch = Arrays.mismatch(expected, actual);
+            throw new AssertionError(label + "：解码结果不一致，第一个不同的位置为 " + mismatch
+                    + "（期望 " + expected.length + " 字节，实际 " + actual.length + " 字节）");
+        }
+    }
+}